@@ -0,0 +1,68 @@
+package org.apache.cordova.otpreader;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.Signature;
+import android.os.Build;
+import android.util.Base64;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Computes the app signature hash for the SMS Retriever API
+ * The hash is the first 11 base64 characters of SHA-256("packageName signature"),
+ * and must be appended to SMS messages sent by the backend
+ */
+public final class AppSignatureHelper {
+
+    private static final String HASH_TYPE = "SHA-256";
+    private static final int NUM_HASHED_BYTES = 9;
+    private static final int NUM_BASE64_CHAR = 11;
+
+    private AppSignatureHelper() {
+    }
+
+    /**
+     * Get the app hash for every signing certificate of the current package
+     */
+    @SuppressWarnings("deprecation")
+    public static List<String> getAppSignatures(Context context) throws PackageManager.NameNotFoundException, NoSuchAlgorithmException {
+        String packageName = context.getPackageName();
+        PackageManager packageManager = context.getPackageManager();
+
+        Signature[] signatures;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            PackageInfo info = packageManager.getPackageInfo(packageName, PackageManager.GET_SIGNING_CERTIFICATES);
+            signatures = info.signingInfo == null ? null
+                    : info.signingInfo.hasMultipleSigners()
+                        ? info.signingInfo.getApkContentsSigners()
+                        : info.signingInfo.getSigningCertificateHistory();
+        } else {
+            signatures = packageManager.getPackageInfo(packageName, PackageManager.GET_SIGNATURES).signatures;
+        }
+
+        List<String> hashes = new ArrayList<String>();
+        if (signatures == null) return hashes;
+        for (Signature signature : signatures) {
+            hashes.add(hash(packageName, signature.toCharsString()));
+        }
+        return hashes;
+    }
+
+    private static String hash(String packageName, String signature) throws NoSuchAlgorithmException {
+        String appInfo = packageName + " " + signature;
+        MessageDigest messageDigest = MessageDigest.getInstance(HASH_TYPE);
+        messageDigest.update(appInfo.getBytes(StandardCharsets.UTF_8));
+
+        byte[] hashSignature = new byte[NUM_HASHED_BYTES];
+        System.arraycopy(messageDigest.digest(), 0, hashSignature, 0, NUM_HASHED_BYTES);
+
+        String base64Hash = Base64.encodeToString(hashSignature, Base64.NO_PADDING | Base64.NO_WRAP);
+        return base64Hash.substring(0, NUM_BASE64_CHAR);
+    }
+}
@@ -0,0 +1,89 @@
+package org.apache.cordova.otpreader;
+
+import android.content.SharedPreferences;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Learned SMS arrival latency per sender: the time from arming a session to the SMS broadcast
+ * Kept as a smoothed mean and mean deviation (as for TCP round-trip times) and persisted
+ * in shared preferences, so the estimate carries over between app launches
+ */
+final class ArrivalStats {
+
+    /** Key for sessions that listen to any sender */
+    static final String ANY_SENDER = "*";
+
+    private static final double GAIN = 0.125;
+    private static final double DEVIATION_GAIN = 0.25;
+    private static final int DEVIATION_FACTOR = 4;
+
+    private final SharedPreferences preferences;
+    private final Map<String, double[]> stats = new HashMap<String, double[]>();
+
+    ArrivalStats(SharedPreferences preferences) {
+        this.preferences = preferences;
+        for (Map.Entry<String, ?> entry : preferences.getAll().entrySet()) {
+            double[] values = parse(String.valueOf(entry.getValue()));
+            if (values != null) stats.put(entry.getKey(), values);
+        }
+    }
+
+    /**
+     * Record an observed arrival latency
+     */
+    synchronized void record(String sender, long latencyMs) {
+        String key = key(sender);
+        double[] values = stats.get(key);
+        if (values == null) {
+            values = new double[] {latencyMs, latencyMs / 2.0, 1};
+            stats.put(key, values);
+        } else {
+            values[1] += DEVIATION_GAIN * (Math.abs(latencyMs - values[0]) - values[1]);
+            values[0] += GAIN * (latencyMs - values[0]);
+            values[2]++;
+        }
+        preferences.edit().putString(key, values[0] + "," + values[1] + "," + (long) values[2]).apply();
+    }
+
+    /**
+     * Time after which an SMS from this sender is unlikely to still arrive, or -1 if nothing was learned yet
+     */
+    synchronized long expectedMs(String sender) {
+        double[] values = stats.get(key(sender));
+        if (values == null) return -1;
+        return Math.round(values[0] + DEVIATION_FACTOR * values[1]);
+    }
+
+    synchronized JSONObject toJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        for (Map.Entry<String, double[]> entry : stats.entrySet()) {
+            double[] values = entry.getValue();
+            JSONObject sender = new JSONObject();
+            sender.put("meanMs", Math.round(values[0]));
+            sender.put("deviationMs", Math.round(values[1]));
+            sender.put("samples", (long) values[2]);
+            sender.put("expectedMs", Math.round(values[0] + DEVIATION_FACTOR * values[1]));
+            json.put(entry.getKey(), sender);
+        }
+        return json;
+    }
+
+    private static String key(String sender) {
+        return sender != null ? sender : ANY_SENDER;
+    }
+
+    private static double[] parse(String value) {
+        String[] parts = value.split(",");
+        if (parts.length != 3) return null;
+        try {
+            return new double[] {Double.parseDouble(parts[0]), Double.parseDouble(parts[1]), Double.parseDouble(parts[2])};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package org.apache.cordova.otpreader;
+
+/**
+ * Native OTP autofill target of a listening session
+ * Builds the script that writes the code into the page, so the field is filled
+ * without waiting for the JS callback to be dispatched and handled
+ */
+final class Autofill {
+
+    // Looks the target up by id, then as a CSS selector, then falls back to the focused element.
+    // The native value setter and input/change events keep framework-bound inputs in sync.
+    // Without requestSubmit (older System WebViews) only a submit event is dispatched: form.submit()
+    // would skip the page's handlers and navigate the WebView away from a single-page app
+    private static final String SCRIPT_PREFIX = "(function(a){"
+            + "var el=a.selector?document.getElementById(a.selector):null;"
+            + "if(!el&&a.selector){try{el=document.querySelector(a.selector);}catch(e){}}"
+            + "if(!el){el=document.activeElement;}"
+            + "if(!el||!('value' in el)){return;}"
+            + "var d=Object.getOwnPropertyDescriptor(Object.getPrototypeOf(el),'value');"
+            + "if(d&&d.set){d.set.call(el,a.otp);}else{el.value=a.otp;}"
+            + "el.dispatchEvent(new Event('input',{bubbles:true}));"
+            + "el.dispatchEvent(new Event('change',{bubbles:true}));"
+            + "if(a.autoSubmit&&el.form){if(el.form.requestSubmit){el.form.requestSubmit();}"
+            + "else{el.form.dispatchEvent(new Event('submit',{bubbles:true,cancelable:true}));}}"
+            + "})(";
+
+    /** Default minimum confidence: a code needs an OTP keyword nearby, e.g. "code is 123456" */
+    static final double DEFAULT_MIN_CONFIDENCE = 0.7;
+
+    final String selector;
+    final boolean autoSubmit;
+    /** Codes below this confidence are not filled; template matches have confidence 1 */
+    final double minConfidence;
+
+    private Autofill(String selector, boolean autoSubmit, double minConfidence) {
+        this.selector = selector;
+        this.autoSubmit = autoSubmit;
+        this.minConfidence = minConfidence;
+    }
+
+    /**
+     * Parse the autofill option of startListening
+     * @param option true for the focused input, or a field id or CSS selector
+     * @param minConfidence Lowest confidence of a code to fill in
+     * @return The target, or null if autofill is off
+     */
+    static Autofill parse(Object option, boolean autoSubmit, double minConfidence) {
+        if (option instanceof String) {
+            String selector = ((String) option).trim();
+            return selector.isEmpty() ? null : new Autofill(selector, autoSubmit, minConfidence);
+        }
+        if (Boolean.TRUE.equals(option)) {
+            return new Autofill(null, autoSubmit, minConfidence);
+        }
+        return null;
+    }
+
+    /**
+     * Script that fills the target with the given code
+     */
+    String script(String otp) {
+        return SCRIPT_PREFIX + ResultWriter.begin()
+                .put("selector", selector)
+                .put("otp", otp)
+                .put("autoSubmit", autoSubmit)
+                .toJson() + ");";
+    }
+}
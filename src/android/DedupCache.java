@@ -0,0 +1,89 @@
+package org.apache.cordova.otpreader;
+
+/**
+ * Time-windowed duplicate filter for received messages
+ * Keys are 64-bit FNV-1a hashes kept in primitive arrays, so a lookup allocates nothing.
+ * Once full, an expired key or else the least recently seen key is evicted
+ */
+final class DedupCache {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final long[] keys;
+    private final long[] seenAt;
+    // Recency stamp per slot, bumped on every lookup that finds the key
+    private final long[] usedAt;
+    private final long windowNanos;
+    private int size;
+    private long clock;
+    private long suppressed;
+
+    DedupCache(int capacity, long windowNanos) {
+        this.keys = new long[capacity];
+        this.seenAt = new long[capacity];
+        this.usedAt = new long[capacity];
+        this.windowNanos = windowNanos;
+    }
+
+    /**
+     * FNV-1a hash of a message, over UTF-16 code units
+     */
+    static long hash(CharSequence message) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0, n = message.length(); i < n; i++) {
+            hash = mix(hash, message.charAt(i));
+        }
+        return hash;
+    }
+
+    /**
+     * Record a key, reporting whether it was already seen within the window
+     * A duplicate does not extend the window, so a message repeated much later is delivered again
+     * @param now elapsedRealtimeNanos
+     */
+    synchronized boolean isDuplicate(long key, long now) {
+        clock++;
+        // Eviction candidate: an expired key if there is one, otherwise the least recently seen
+        int victim = -1;
+        boolean victimExpired = false;
+        for (int i = 0; i < size; i++) {
+            if (keys[i] == key) {
+                usedAt[i] = clock;
+                if (now - seenAt[i] <= windowNanos) {
+                    suppressed++;
+                    return true;
+                }
+                // Seen before the window: deliver again and start a new window
+                seenAt[i] = now;
+                return false;
+            }
+            boolean expired = now - seenAt[i] > windowNanos;
+            if (victim < 0 || (expired && !victimExpired) || (expired == victimExpired && usedAt[i] < usedAt[victim])) {
+                victim = i;
+                victimExpired = expired;
+            }
+        }
+
+        int slot = size < keys.length ? size++ : victim;
+        keys[slot] = key;
+        seenAt[slot] = now;
+        usedAt[slot] = clock;
+        return false;
+    }
+
+    /**
+     * Number of duplicates suppressed since the plugin loaded
+     */
+    synchronized long suppressedCount() {
+        return suppressed;
+    }
+
+    private static long mix(long hash, int c) {
+        hash ^= c & 0xff;
+        hash *= FNV_PRIME;
+        hash ^= c >>> 8;
+        hash *= FNV_PRIME;
+        return hash;
+    }
+}
@@ -0,0 +1,113 @@
+package org.apache.cordova.otpreader;
+
+import android.os.SystemClock;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Hot-path latency instrumentation
+ * Keeps monotonic timestamps for each stage of recent OTP sessions in a
+ * lock-free ring buffer and reports per-stage percentiles on demand
+ */
+public final class LatencyMetrics {
+
+    public static final int STAGE_RECEIVED = 0;
+    public static final int STAGE_CONSENT_LAUNCHED = 1;
+    public static final int STAGE_ACTIVITY_RESULT = 2;
+    public static final int STAGE_JSON_BUILT = 3;
+    public static final int STAGE_DELIVERED = 4;
+
+    private static final String[] STAGE_NAMES = {
+        "received", "consentLaunched", "activityResult", "jsonBuilt", "delivered"
+    };
+    private static final int STAGES = STAGE_NAMES.length;
+
+    private final int capacity;
+    private final AtomicLongArray stamps;
+    private final AtomicInteger nextSession = new AtomicInteger();
+    private volatile int currentSlot = -1;
+
+    public LatencyMetrics(int capacity) {
+        this.capacity = capacity;
+        this.stamps = new AtomicLongArray(capacity * STAGES);
+    }
+
+    /**
+     * Start a new session at the SMS broadcast, recycling the oldest slot
+     */
+    public void beginSession() {
+        int slot = (nextSession.getAndIncrement() & Integer.MAX_VALUE) % capacity;
+        int base = slot * STAGES;
+        for (int stage = 1; stage < STAGES; stage++) {
+            stamps.set(base + stage, 0);
+        }
+        stamps.set(base + STAGE_RECEIVED, SystemClock.elapsedRealtimeNanos());
+        currentSlot = slot;
+    }
+
+    /**
+     * Record a stage timestamp for the current session
+     */
+    public void mark(int stage) {
+        int slot = currentSlot;
+        if (slot < 0) return;
+        stamps.set(slot * STAGES + stage, SystemClock.elapsedRealtimeNanos());
+    }
+
+    /**
+     * Percentiles (p50/p95/p99) of each stage's duration since the previous stage,
+     * plus the end-to-end time from broadcast to JS delivery
+     */
+    public JSONObject snapshot() throws JSONException {
+        int sessions = Math.min(nextSession.get() & Integer.MAX_VALUE, capacity);
+        long[] deltas = new long[sessions];
+
+        JSONObject stages = new JSONObject();
+        for (int stage = 1; stage < STAGES; stage++) {
+            int count = collect(sessions, stage - 1, stage, deltas);
+            stages.put(STAGE_NAMES[stage], percentiles(deltas, count));
+        }
+        int count = collect(sessions, STAGE_RECEIVED, STAGE_DELIVERED, deltas);
+        stages.put("total", percentiles(deltas, count));
+
+        JSONObject result = new JSONObject();
+        result.put("sessions", sessions);
+        result.put("capacity", capacity);
+        result.put("stages", stages);
+        return result;
+    }
+
+    private int collect(int sessions, int fromStage, int toStage, long[] deltas) {
+        int count = 0;
+        for (int slot = 0; slot < sessions; slot++) {
+            long from = stamps.get(slot * STAGES + fromStage);
+            long to = stamps.get(slot * STAGES + toStage);
+            if (from > 0 && to >= from) {
+                deltas[count++] = to - from;
+            }
+        }
+        return count;
+    }
+
+    private static JSONObject percentiles(long[] deltas, int count) throws JSONException {
+        JSONObject result = new JSONObject();
+        result.put("count", count);
+        if (count == 0) return result;
+
+        Arrays.sort(deltas, 0, count);
+        result.put("p50Ms", percentile(deltas, count, 50) / 1e6);
+        result.put("p95Ms", percentile(deltas, count, 95) / 1e6);
+        result.put("p99Ms", percentile(deltas, count, 99) / 1e6);
+        return result;
+    }
+
+    private static long percentile(long[] sorted, int count, int percentile) {
+        int rank = (int) Math.ceil(percentile / 100.0 * count) - 1;
+        return sorted[Math.max(0, Math.min(rank, count - 1))];
+    }
+}
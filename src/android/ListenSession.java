@@ -0,0 +1,92 @@
+package org.apache.cordova.otpreader;
+
+import org.apache.cordova.CallbackContext;
+import org.json.JSONObject;
+
+/**
+ * One active startListening call
+ * Holds the sender filter, the JS callback that receives the session's events,
+ * and the settings parsed from the startListening options
+ */
+final class ListenSession {
+
+    /** SMS User Consent: any SMS, shown to the user in a consent dialog */
+    static final int MODE_CONSENT = 0;
+    /** SMS Retriever: only SMS carrying the app hash, delivered without a dialog */
+    static final int MODE_RETRIEVER = 1;
+    /** Matches sessions of every mode */
+    static final int MODE_ANY = -1;
+
+    /** warnAfterMs value: warn once the learned arrival latency for the sender has passed */
+    static final long WARN_AUTO = -2;
+
+    /** Upper bound for the exponential re-arm backoff */
+    private static final long MAX_REARM_DELAY_MS = 30000;
+    private static final int DEFAULT_MAX_REARMS = 10;
+
+    final String id;
+    final String senderFilter;
+    final CallbackContext callbackContext;
+    final int mode;
+    final boolean continuous;
+    final int maxRearms;
+    final long rearmBackoffMs;
+    /** Input filled natively with each received code, or null */
+    final Autofill autofill;
+    /** App-level deadline from the first arm, or 0 for none */
+    final long deadlineMs;
+    /** Early warning after each arm, 0 for none, or WARN_AUTO */
+    final long warnAfterMs;
+    /** Delay before the session is first armed */
+    final long armDelayMs;
+
+    // Only touched on the main thread
+    int rearmCount;
+    // elapsedRealtimeNanos of the latest arm, or 0 before the first
+    volatile long armedAt;
+
+    ListenSession(String id, String senderFilter, CallbackContext callbackContext, JSONObject options) {
+        if (options == null) options = new JSONObject();
+        this.id = id;
+        this.senderFilter = senderFilter;
+        this.callbackContext = callbackContext;
+        this.mode = "retriever".equals(options.optString("mode", "consent")) ? MODE_RETRIEVER : MODE_CONSENT;
+        this.continuous = options.optBoolean("continuous", false);
+        this.maxRearms = options.optInt("maxRearms", DEFAULT_MAX_REARMS);
+        // Clamped, so the doubling in nextRearmDelayMs cannot overflow into a negative delay
+        this.rearmBackoffMs = Math.min(Math.max(options.optLong("rearmBackoffMs", 0), 0), MAX_REARM_DELAY_MS);
+        this.autofill = Autofill.parse(options.opt("autofill"), options.optBoolean("autoSubmit", false),
+                options.optDouble("autofillMinConfidence", Autofill.DEFAULT_MIN_CONFIDENCE));
+        this.deadlineMs = Math.max(options.optLong("deadlineMs", 0), 0);
+        this.warnAfterMs = "auto".equals(options.opt("warnAfterMs")) ? WARN_AUTO : Math.max(options.optLong("warnAfterMs", 0), 0);
+        this.armDelayMs = Math.max(options.optLong("armDelayMs", 0), 0);
+    }
+
+    /**
+     * Whether this session still wants the consent request re-armed after it is spent
+     */
+    boolean canRearm() {
+        return continuous && rearmCount < maxRearms;
+    }
+
+    /**
+     * Delay before the next re-arm: the backoff doubles with each re-arm, starting at rearmBackoffMs
+     */
+    long nextRearmDelayMs() {
+        if (rearmBackoffMs <= 0) return 0;
+        return Math.min(rearmBackoffMs << Math.min(rearmCount, 16), MAX_REARM_DELAY_MS);
+    }
+
+    boolean isMode(int value) {
+        return value == MODE_ANY || mode == value;
+    }
+
+    /**
+     * Whether a result of the request of one mode, armed with the given sender filter, is for this session
+     * Retriever messages are addressed by the app hash and carry no checked sender, so every retriever session gets them
+     */
+    boolean receives(int value, String requestSenderFilter) {
+        if (!isMode(value)) return false;
+        return value != MODE_CONSENT || senderFilter == null || senderFilter.equals(requestSenderFilter);
+    }
+}
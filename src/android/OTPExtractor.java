@@ -0,0 +1,355 @@
+package org.apache.cordova.otpreader;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Native OTP extractor
+ * Normalizes Unicode digits (Devanagari, Arabic-Indic, full-width, ...) in one pass over the
+ * SMS text, collects every plausible code, including grouped ones such as "123 456", and ranks
+ * them by keyword proximity, length and format
+ */
+public final class OTPExtractor {
+
+    /** Accept any code length between MIN_LENGTH and MAX_LENGTH */
+    public static final int ANY_LENGTH = 0;
+
+    private static final int MIN_LENGTH = 4;
+    private static final int MAX_LENGTH = 8;
+    private static final int MAX_CANDIDATES = 5;
+
+    /** Maximum distance (in chars) between a keyword and the code it anchors */
+    private static final int KEYWORD_WINDOW = 24;
+    /** Maximum distance (in chars) between an amount or reference word and the number it labels */
+    private static final int LABEL_WINDOW = 12;
+
+    private static final int TOKEN_WORD = 0;
+    private static final int TOKEN_KEYWORD = 1;
+    private static final int TOKEN_LABEL = 2;
+    private static final int TOKEN_DIGITS = 3;
+    private static final int TOKEN_MIXED = 4;
+
+    private static final int FORMAT_DIGITS = 0;
+    private static final int FORMAT_GROUPED = 1;
+    private static final int FORMAT_ALPHANUMERIC = 2;
+    private static final int FORMAT_EMBEDDED = 3;
+
+    private static final double[] FORMAT_SCORE = {0.5, 0.45, 0.35, 0.15};
+
+    private static final char[][] KEYWORDS = {
+        "otp".toCharArray(),
+        "code".toCharArray(),
+        "pin".toCharArray(),
+        "passcode".toCharArray(),
+        "password".toCharArray(),
+        "verification".toCharArray()
+    };
+
+    /** Words that label amounts, accounts and transaction ids rather than codes */
+    private static final char[][] LABELS = {
+        "rs".toCharArray(),
+        "inr".toCharArray(),
+        "usd".toCharArray(),
+        "eur".toCharArray(),
+        "amt".toCharArray(),
+        "amount".toCharArray(),
+        "balance".toCharArray(),
+        "bal".toCharArray(),
+        "acct".toCharArray(),
+        "account".toCharArray(),
+        "ac".toCharArray(),
+        "txn".toCharArray(),
+        "ref".toCharArray(),
+        "id".toCharArray(),
+        "no".toCharArray(),
+        "ending".toCharArray()
+    };
+
+    private static final Comparator<Candidate> BY_SCORE = new Comparator<Candidate>() {
+        @Override
+        public int compare(Candidate a, Candidate b) {
+            if (a.score != b.score) return a.score > b.score ? -1 : 1;
+            return a.start - b.start;
+        }
+    };
+
+    /**
+     * A possible code, with its confidence between 0 and 1
+     */
+    public static final class Candidate {
+        public final String code;
+        public final double confidence;
+        final double score;
+        final int start;
+
+        Candidate(String code, double score, int start) {
+            this.code = code;
+            this.score = score;
+            this.confidence = Math.round(Math.max(0, Math.min(1, score)) * 100) / 100.0;
+            this.start = start;
+        }
+    }
+
+    private OTPExtractor() {
+    }
+
+    /**
+     * Extract OTP from SMS message text
+     * @param message SMS message text
+     * @param length Expected OTP length, or ANY_LENGTH for 4-8 characters
+     * @return Best-ranked OTP (with ASCII digits) or null if not found
+     */
+    public static String extract(CharSequence message, int length) {
+        List<Candidate> candidates = candidates(message, length);
+        return candidates.isEmpty() ? null : candidates.get(0).code;
+    }
+
+    /**
+     * Rank the possible codes in an SMS message text
+     * @param message SMS message text
+     * @param length Expected OTP length, or ANY_LENGTH for 4-8 characters
+     * @return Up to MAX_CANDIDATES distinct codes, best first
+     */
+    public static List<Candidate> candidates(CharSequence message, int length) {
+        List<Candidate> candidates = new ArrayList<Candidate>();
+        if (message == null) return candidates;
+
+        // Single pass: normalize digits to ASCII and split into tokens
+        final int n = message.length();
+        char[] text = new char[n];
+        int[] starts = new int[n / 2 + 1];
+        int[] ends = new int[n / 2 + 1];
+        int[] types = new int[n / 2 + 1];
+        int tokens = 0;
+        int tokenStart = -1;
+        int digits = 0;
+        for (int i = 0; i <= n; i++) {
+            char c = i < n ? message.charAt(i) : ' ';
+            int digit = Character.digit(c, 10);
+            if (digit >= 0) c = (char) ('0' + digit);
+            if (i < n) text[i] = c;
+
+            if (i < n && Character.isLetterOrDigit(c)) {
+                if (tokenStart < 0) tokenStart = i;
+                if (digit >= 0) digits++;
+            } else if (tokenStart >= 0) {
+                starts[tokens] = tokenStart;
+                ends[tokens] = i;
+                types[tokens] = tokenType(text, tokenStart, i - tokenStart, digits);
+                tokens++;
+                tokenStart = -1;
+                digits = 0;
+            }
+        }
+
+        int groupedUntil = -1;
+        for (int t = 0; t < tokens; t++) {
+            int start = starts[t];
+            int tokenLength = ends[t] - start;
+
+            if (types[t] == TOKEN_DIGITS) {
+                // Equal-sized digit groups joined by one space or hyphen, e.g. "123 456" or "12-34-56"
+                int last = t;
+                while (last + 1 < tokens && types[last + 1] == TOKEN_DIGITS
+                        && ends[last + 1] - starts[last + 1] == tokenLength
+                        && starts[last + 1] - ends[last] == 1 && isGroupSeparator(text[ends[last]])) {
+                    last++;
+                }
+                int total = tokenLength * (last - t + 1);
+                if (last > t && t > groupedUntil && tokenLength >= 2 && tokenLength <= 4 && matchesLength(total, length)) {
+                    add(candidates, text, starts, ends, types, tokens, t, last, FORMAT_GROUPED, start, ends[last] - start, length);
+                    groupedUntil = last;
+                }
+
+                // The groups of a grouped code are not codes of their own, e.g. "4985" in "4985 7829"
+                if (t > groupedUntil) {
+                    if (matchesLength(tokenLength, length)) {
+                        add(candidates, text, starts, ends, types, tokens, t, t, FORMAT_DIGITS, start, tokenLength, length);
+                    } else if (length > 0 && tokenLength > length) {
+                        add(candidates, text, starts, ends, types, tokens, t, t, FORMAT_EMBEDDED, start, length, length);
+                    }
+                }
+            } else if (types[t] == TOKEN_MIXED) {
+                if (matchesLength(tokenLength, length) && isCodeToken(text, start, tokenLength)) {
+                    add(candidates, text, starts, ends, types, tokens, t, t, FORMAT_ALPHANUMERIC, start, tokenLength, length);
+                }
+
+                // Longest digit run inside the token, e.g. "OTP482913"
+                int runStart = -1;
+                int runLength = 0;
+                for (int i = start, current = -1; i < ends[t]; i++) {
+                    if (text[i] >= '0' && text[i] <= '9') {
+                        if (current < 0) current = i;
+                        if (i + 1 - current > runLength) {
+                            runStart = current;
+                            runLength = i + 1 - current;
+                        }
+                    } else {
+                        current = -1;
+                    }
+                }
+                if (matchesLength(runLength, length)) {
+                    add(candidates, text, starts, ends, types, tokens, t, t, FORMAT_EMBEDDED, runStart, runLength, length);
+                } else if (length > 0 && runLength > length) {
+                    add(candidates, text, starts, ends, types, tokens, t, t, FORMAT_EMBEDDED, runStart, length, length);
+                }
+            }
+        }
+
+        Collections.sort(candidates, BY_SCORE);
+        return candidates.size() > MAX_CANDIDATES ? new ArrayList<Candidate>(candidates.subList(0, MAX_CANDIDATES)) : candidates;
+    }
+
+    /**
+     * Encode ranked candidates as a JSON array of { otp, confidence }
+     * Codes only contain ASCII letters and digits, so no escaping is needed
+     */
+    public static String toJson(List<Candidate> candidates) {
+        StringBuilder json = new StringBuilder(24 * candidates.size() + 2).append('[');
+        for (int i = 0; i < candidates.size(); i++) {
+            Candidate candidate = candidates.get(i);
+            if (i > 0) json.append(',');
+            json.append("{\"otp\":\"").append(candidate.code).append("\",\"confidence\":").append(candidate.confidence).append('}');
+        }
+        return json.append(']').toString();
+    }
+
+    /**
+     * Score a candidate spanning tokens first..last and add it, keeping the best score per code
+     */
+    private static void add(List<Candidate> candidates, char[] text, int[] starts, int[] ends, int[] types, int tokens,
+                            int first, int last, int format, int start, int spanLength, int length) {
+        StringBuilder code = new StringBuilder(spanLength);
+        for (int i = start; i < start + spanLength; i++) {
+            if (Character.isLetterOrDigit(text[i])) code.append(text[i]);
+        }
+        int end = start + spanLength;
+        int codeLength = code.length();
+
+        double score = FORMAT_SCORE[format];
+
+        // Keyword proximity: "OTP is 123456" ranks above "123456 is your OTP", both above no keyword
+        double proximity = 0;
+        for (int t = first - 1; t >= 0 && start - ends[t] <= KEYWORD_WINDOW; t--) {
+            if (types[t] == TOKEN_KEYWORD) {
+                proximity = 0.05 + 0.35 * (1 - (start - ends[t]) / (double) (KEYWORD_WINDOW + 1));
+                break;
+            }
+        }
+        for (int t = last + 1; t < tokens && starts[t] - end <= KEYWORD_WINDOW; t++) {
+            if (types[t] == TOKEN_KEYWORD) {
+                proximity = Math.max(proximity, 0.05 + 0.25 * (1 - (starts[t] - end) / (double) (KEYWORD_WINDOW + 1)));
+                break;
+            }
+        }
+        score += proximity;
+
+        // Length: six characters is by far the most common OTP length
+        if (length > 0 && codeLength == length) {
+            score += 0.1;
+        } else if (codeLength == 6) {
+            score += 0.1;
+        } else if (codeLength == 4 || codeLength == 8) {
+            score += 0.05;
+        } else {
+            score += 0.03;
+        }
+
+        // Amounts, account numbers and transaction ids: "Rs 1500", "A/c XX1234", "Txn ID 998877"
+        for (int t = first - 1; t >= 0 && t >= first - 2 && start - ends[t] <= LABEL_WINDOW; t--) {
+            if (types[t] == TOKEN_LABEL) {
+                score -= 0.45;
+                break;
+            }
+        }
+        if (precededByCurrency(text, start) || isPartOfNumber(text, start, end) || isMasked(text, starts[first], ends[last])) {
+            score -= 0.45;
+        }
+
+        String value = code.toString();
+        for (int i = 0; i < candidates.size(); i++) {
+            Candidate existing = candidates.get(i);
+            if (existing.code.equals(value)) {
+                if (score > existing.score) candidates.set(i, new Candidate(value, score, start));
+                return;
+            }
+        }
+        candidates.add(new Candidate(value, score, start));
+    }
+
+    private static int tokenType(char[] text, int start, int length, int digits) {
+        if (digits == length) return TOKEN_DIGITS;
+        if (digits > 0) return TOKEN_MIXED;
+        if (matches(text, start, length, KEYWORDS)) return TOKEN_KEYWORD;
+        if (matches(text, start, length, LABELS)) return TOKEN_LABEL;
+        return TOKEN_WORD;
+    }
+
+    private static boolean matchesLength(int tokenLength, int length) {
+        if (length > 0) return tokenLength == length;
+        return tokenLength >= MIN_LENGTH && tokenLength <= MAX_LENGTH;
+    }
+
+    private static boolean isGroupSeparator(char c) {
+        return c == ' ' || c == '-' || c == '\u00a0';
+    }
+
+    /**
+     * Alphanumeric codes are upper-case letters mixed with digits (e.g. "A7K9QZ"),
+     * which keeps ordinary lower-case words out of the candidate set
+     */
+    private static boolean isCodeToken(char[] text, int start, int length) {
+        for (int i = start; i < start + length; i++) {
+            char c = text[i];
+            if (!(c >= '0' && c <= '9') && !(c >= 'A' && c <= 'Z')) return false;
+        }
+        return true;
+    }
+
+    private static boolean precededByCurrency(char[] text, int start) {
+        int i = start - 1;
+        while (i >= 0 && text[i] == ' ') i--;
+        return i >= 0 && Character.getType(text[i]) == Character.CURRENCY_SYMBOL;
+    }
+
+    /**
+     * Part of a decimal amount, date or time: "1,500.00", "12/05/2024", "2024-05-12", "10:30"
+     */
+    private static boolean isPartOfNumber(char[] text, int start, int end) {
+        if (start >= 2 && isNumberSeparator(text[start - 1]) && isDigit(text[start - 2])) return true;
+        return end + 1 < text.length && isNumberSeparator(text[end]) && isDigit(text[end + 1]);
+    }
+
+    private static boolean isNumberSeparator(char c) {
+        return c == '.' || c == ',' || c == '/' || c == ':' || c == '-';
+    }
+
+    /**
+     * Masked account or card numbers such as "XX1234" or "**1234"
+     */
+    private static boolean isMasked(char[] text, int start, int end) {
+        if (start >= 1 && text[start - 1] == '*') return true;
+        return end - start >= 2 && (text[start] == 'X' || text[start] == 'x') && (text[start + 1] == 'X' || text[start + 1] == 'x');
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean matches(char[] text, int start, int length, char[][] words) {
+        for (char[] word : words) {
+            if (word.length != length) continue;
+            boolean match = true;
+            for (int k = 0; k < length; k++) {
+                if (Character.toLowerCase(text[start + k]) != word[k]) {
+                    match = false;
+                    break;
+                }
+            }
+            if (match) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,143 @@
+package org.apache.cordova.otpreader;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Level-gated logging facade for the plugin
+ * Messages below the configured level cost a single comparison: arguments are
+ * passed through fixed-arity overloads and only concatenated once enabled
+ */
+public final class OTPLog {
+
+    public static final int VERBOSE = Log.VERBOSE;
+    public static final int DEBUG = Log.DEBUG;
+    public static final int INFO = Log.INFO;
+    public static final int WARN = Log.WARN;
+    public static final int ERROR = Log.ERROR;
+    public static final int NONE = Integer.MAX_VALUE;
+
+    private static final String[] LEVEL_NAMES = {"VERBOSE", "DEBUG", "INFO", "WARN", "ERROR"};
+
+    private static volatile int level = WARN;
+    private static volatile String[] trace;
+    private static final AtomicInteger traceNext = new AtomicInteger();
+
+    private OTPLog() {
+    }
+
+    /**
+     * Parse a level name (VERBOSE, DEBUG, INFO, WARN, ERROR, NONE)
+     * @return Parsed level, or the fallback when the name is unknown
+     */
+    public static int parseLevel(String name, int fallback) {
+        if (name == null) return fallback;
+        String upper = name.trim().toUpperCase(Locale.ROOT);
+        for (int i = 0; i < LEVEL_NAMES.length; i++) {
+            if (LEVEL_NAMES[i].equals(upper)) return VERBOSE + i;
+        }
+        if ("NONE".equals(upper) || "OFF".equals(upper)) return NONE;
+        return fallback;
+    }
+
+    public static String levelName(int value) {
+        int index = value - VERBOSE;
+        return index >= 0 && index < LEVEL_NAMES.length ? LEVEL_NAMES[index] : "NONE";
+    }
+
+    public static void setLevel(int value) {
+        level = value;
+    }
+
+    public static int getLevel() {
+        return level;
+    }
+
+    public static boolean isLoggable(int priority) {
+        return priority >= level;
+    }
+
+    /**
+     * Keep the last messages that passed the level gate in memory
+     * @param capacity Number of messages to keep, or 0 to disable the trace buffer
+     */
+    public static synchronized void setTraceCapacity(int capacity) {
+        traceNext.set(0);
+        trace = capacity > 0 ? new String[capacity] : null;
+    }
+
+    /**
+     * Snapshot of the trace buffer, oldest first
+     */
+    public static JSONArray getTrace() {
+        JSONArray result = new JSONArray();
+        String[] buffer = trace;
+        if (buffer == null) return result;
+
+        int next = traceNext.get();
+        int start = next > buffer.length ? next - buffer.length : 0;
+        for (int i = start; i < next; i++) {
+            String line = buffer[i % buffer.length];
+            if (line != null) result.put(line);
+        }
+        return result;
+    }
+
+    public static void d(String tag, String msg) {
+        if (DEBUG >= level) emit(DEBUG, tag, msg, null);
+    }
+
+    public static void d(String tag, String msg, Object arg) {
+        if (DEBUG >= level) emit(DEBUG, tag, msg + arg, null);
+    }
+
+    public static void d(String tag, String msg, long arg) {
+        if (DEBUG >= level) emit(DEBUG, tag, msg + arg, null);
+    }
+
+    public static void i(String tag, String msg) {
+        if (INFO >= level) emit(INFO, tag, msg, null);
+    }
+
+    public static void i(String tag, String msg, Object arg) {
+        if (INFO >= level) emit(INFO, tag, msg + arg, null);
+    }
+
+    public static void w(String tag, String msg) {
+        if (WARN >= level) emit(WARN, tag, msg, null);
+    }
+
+    public static void w(String tag, String msg, Object arg) {
+        if (WARN >= level) emit(WARN, tag, msg + arg, null);
+    }
+
+    public static void e(String tag, String msg) {
+        if (ERROR >= level) emit(ERROR, tag, msg, null);
+    }
+
+    public static void e(String tag, String msg, long arg) {
+        if (ERROR >= level) emit(ERROR, tag, msg + arg, null);
+    }
+
+    public static void e(String tag, String msg, Throwable error) {
+        if (ERROR >= level) emit(ERROR, tag, msg, error);
+    }
+
+    private static void emit(int priority, String tag, String msg, Throwable error) {
+        if (error != null) {
+            Log.println(priority, tag, msg + '\n' + Log.getStackTraceString(error));
+        } else {
+            Log.println(priority, tag, msg);
+        }
+
+        String[] buffer = trace;
+        if (buffer != null) {
+            int slot = traceNext.getAndIncrement();
+            buffer[(slot & Integer.MAX_VALUE) % buffer.length] = levelName(priority).charAt(0) + "/" + tag + ": " + msg;
+        }
+    }
+}
@@ -9,7 +9,9 @@ import android.content.Context;
 import android.content.pm.PackageManager;
 import android.os.Build;
 import android.os.Bundle;
-import android.util.Log;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.telephony.TelephonyManager;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
@@ -21,42 +23,162 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import com.google.android.gms.auth.api.phone.SmsRetriever;
-import com.google.android.gms.common.api.CommonStatusCodes;
-import com.google.android.gms.common.api.Status;
 import com.google.android.gms.common.ConnectionResult;
-import com.google.android.gms.common.GoogleApiAvailability;
-import com.google.android.gms.tasks.OnFailureListener;
-import com.google.android.gms.tasks.OnSuccessListener;
-import com.google.android.gms.tasks.Task;
 
 /**
  * OTP Reader Cordova Plugin
- * Uses Android SMS User Consent API for automatic OTP reading
+ * Uses Android SMS User Consent API for automatic OTP reading,
+ * with an optional SMS Retriever (app hash) mode that skips the consent dialog
  */
 public class OTPReader extends CordovaPlugin {
     
     private static final String TAG = "OTPReader";
     private static final int SMS_CONSENT_REQUEST = 2;
     private static final int PERMISSION_REQUEST_CODE = 1001;
+    private static final int METRICS_CAPACITY = 64;
+    private static final long JOURNAL_TTL_MS = 10 * 60 * 1000;
+    private static final String JOURNAL_FILE = "otpreader.journal";
+    private static final String ARRIVAL_STATS_PREFERENCES = "OTPReaderArrivalStats";
+    private static final int DEDUP_CAPACITY = 16;
+    private static final long DEDUP_WINDOW_NANOS = 2 * 60 * 1000000000L;
+    
+    // Fixed event payloads, encoded once
+    private static final String CANCELLED_FIELDS = ResultWriter.begin()
+            .put("event", "cancelled")
+            .put("success", false)
+            .put("userCancelled", true)
+            .put("message", "User denied SMS access or cancelled")
+            .fields();
+    private static final String TIMEOUT_FIELDS = ResultWriter.begin()
+            .put("event", "timeout")
+            .put("success", false)
+            .put("timeout", true)
+            .put("message", "SMS listening timeout occurred")
+            .fields();
     
-    private CallbackContext otpCallbackContext;
+    private final ConcurrentHashMap<String, ListenSession> sessions = new ConcurrentHashMap<String, ListenSession>();
+    private final AtomicInteger sessionCounter = new AtomicInteger();
     private CallbackContext permissionCallbackContext;
     private SMSBroadcastReceiver smsReceiver;
-    private boolean isListening = false;
+    private boolean receiverRegistered = false;
+    private volatile boolean consentArmed = false;
+    private volatile String armedSenderFilter;
+    // Sender filter of the spent consent request whose dialog is open
+    private volatile String consentDialogSenderFilter;
+    private volatile long consentArmedAt;
+    private volatile boolean retrieverArmed = false;
+    private volatile boolean consentInFlight = false;
+    private volatile long duplicateConsentsSuppressed;
+    // Only touched on the main thread
+    private boolean paused = false;
+    private Intent queuedConsentIntent;
+    private CallbackContext restoredCallbackContext;
+    private String restoredSessionId;
+    private volatile long retrieverArmedAt;
+    private volatile SmsRetrieverGateway gateway;
+    private int playServicesStatus = -1;
+    private int receiverRegistrations;
+    private int receiverUnregistrations;
+    private long initNanos = -1;
+    private long firstUseAfterProcessStartMs = -1;
+    private long prewarmNanos = -1;
+    private long lastArmLatencyNanos = -1;
+    private long lastRearmGapNanos = -1;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final LatencyMetrics latencyMetrics = new LatencyMetrics(METRICS_CAPACITY);
+    private final SessionScheduler scheduler = new SessionScheduler(mainHandler);
+    private volatile ArrivalStats arrivalStats;
+    private volatile long lastBroadcastAt;
     private String pendingSenderPhoneNumber;
+    private JSONObject pendingOptions;
+    private volatile TemplateRegistry templateRegistry = TemplateRegistry.EMPTY;
+    private OtpJournal journal;
+    private final DedupCache dedupCache = new DedupCache(DEDUP_CAPACITY, DEDUP_WINDOW_NANOS);
+    private final Runnable discardQueuedConsent = new Runnable() {
+        @Override
+        public void run() {
+            // Nothing listens for the queued dialog anymore; a new session may have started meanwhile
+            if (queuedConsentIntent != null && sessions.isEmpty()) {
+                queuedConsentIntent = null;
+                consentInFlight = false;
+            }
+        }
+    };
+    private final Runnable journalExpiry = new Runnable() {
+        @Override
+        public void run() {
+            cordova.getThreadPool().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        journal().expire();
+                    } catch (Exception e) {
+                        OTPLog.e(TAG, "Error expiring OTP journal", e);
+                    }
+                }
+            });
+        }
+    };
+    
+    /**
+     * Only reads preferences; Play Services, the receiver and storage are set up on the first
+     * startListening or prewarm, so the plugin adds nothing to app start
+     */
+    @Override
+    protected void pluginInitialize() {
+        long start = SystemClock.elapsedRealtimeNanos();
+        OTPLog.setLevel(OTPLog.parseLevel(preferences.getString("OTPReaderLogLevel", "WARN"), OTPLog.WARN));
+        OTPLog.setTraceCapacity(preferences.getInteger("OTPReaderLogTraceSize", 0));
+        
+        // Created on the first exec call (onload="false"), so this is when the app first used the plugin
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            firstUseAfterProcessStartMs = SystemClock.elapsedRealtime() - android.os.Process.getStartElapsedRealtime();
+        }
+        initNanos = SystemClock.elapsedRealtimeNanos() - start;
+    }
     
     @Override
     public boolean execute(String action, JSONArray args, CallbackContext callbackContext) throws JSONException {
         
         if ("startListening".equals(action)) {
             String senderPhoneNumber = args.isNull(0) ? null : args.getString(0);
-            this.startListening(senderPhoneNumber, callbackContext);
+            JSONObject options = args.optJSONObject(1);
+            this.startListening(senderPhoneNumber, options, callbackContext);
+            return true;
+        }
+        
+        if ("registerTemplates".equals(action)) {
+            this.registerTemplates(args.optJSONArray(0), callbackContext);
             return true;
         }
         
         if ("stopListening".equals(action)) {
-            this.stopListening(callbackContext);
+            String sessionId = args.isNull(0) ? null : args.optString(0, null);
+            this.stopListening(sessionId, callbackContext);
+            return true;
+        }
+        
+        if ("prewarm".equals(action)) {
+            cordova.getThreadPool().execute(new Runnable() {
+                @Override
+                public void run() {
+                    prewarm(callbackContext);
+                }
+            });
+            return true;
+        }
+        
+        if ("getAppHash".equals(action)) {
+            this.getAppHash(callbackContext);
             return true;
         }
         
@@ -70,33 +192,189 @@ public class OTPReader extends CordovaPlugin {
             return true;
         }
         
+        if ("setLogLevel".equals(action)) {
+            this.setLogLevel(args.optString(0, null), args.optInt(1, -1), callbackContext);
+            return true;
+        }
+        
+        if ("getMetrics".equals(action)) {
+            this.getMetrics(callbackContext);
+            return true;
+        }
+        
+        if ("getPendingOtp".equals(action)) {
+            final boolean includeDelivered = args.optBoolean(0, false);
+            cordova.getThreadPool().execute(new Runnable() {
+                @Override
+                public void run() {
+                    getPendingOtp(includeDelivered, callbackContext);
+                }
+            });
+            return true;
+        }
+        
         return false;
     }
     
     /**
      * Start listening for SMS messages with OTP
      */
-    private void startListening(String senderPhoneNumber, CallbackContext callbackContext) {
-        if (isListening) {
-            callbackContext.error("Already listening for SMS messages");
-            return;
+    private void startListening(String senderPhoneNumber, JSONObject options, CallbackContext callbackContext) {
+        // Templates passed with startListening are added to the registered set, which other sessions may rely on
+        if (options != null && options.has("templates")) {
+            try {
+                templateRegistry = templateRegistry.merge(options.optJSONArray("templates"));
+            } catch (JSONException e) {
+                callbackContext.error("Invalid OTP templates: " + e.getMessage());
+                return;
+            }
         }
         
         // Check and request permissions first
         if (!hasRequiredPermissions()) {
+            if (permissionCallbackContext != null) {
+                callbackContext.error("SMS permission request already in progress");
+                return;
+            }
             this.permissionCallbackContext = callbackContext;
             this.pendingSenderPhoneNumber = senderPhoneNumber;
+            this.pendingOptions = options;
             requestSMSPermissions();
             return;
         }
         
-        this.startListeningWithPermissions(senderPhoneNumber, callbackContext);
+        this.startListeningWithPermissions(senderPhoneNumber, options, callbackContext);
     }
     
     /**
-     * Check if we have required permissions
+     * Build and cache the SMS Retriever gateway, Play Services status and receiver,
+     * so that starting to listen only has to arm the consent request
      */
-    private boolean hasRequiredPermissions() {
+    private synchronized void prewarm() {
+        if (gateway != null) return;
+        
+        long start = SystemClock.elapsedRealtimeNanos();
+        SmsRetrieverGateway created = createGateway();
+        playServicesStatus = created.availabilityStatus();
+        if (smsReceiver == null) {
+            smsReceiver = new SMSBroadcastReceiver(this);
+        }
+        gateway = created;
+        try {
+            journal().open();
+        } catch (Exception e) {
+            OTPLog.e(TAG, "Error opening OTP journal", e);
+        }
+        arrivalStats();
+        prewarmNanos = SystemClock.elapsedRealtimeNanos() - start;
+        OTPLog.d(TAG, "SMS Retriever pre-warmed (us): ", prewarmNanos / 1000);
+    }
+    
+    /**
+     * Whether Play Services can serve SMS requests
+     * Only a successful status is cached, so an update or install made while the app runs is picked up
+     */
+    private synchronized boolean playServicesAvailable() {
+        if (playServicesStatus != ConnectionResult.SUCCESS) {
+            playServicesStatus = gateway.availabilityStatus();
+        }
+        return playServicesStatus == ConnectionResult.SUCCESS;
+    }
+    
+    /**
+     * The SMS Retriever implementation; load tests override this to script broadcasts without Play Services
+     */
+    SmsRetrieverGateway createGateway() {
+        return new PlayServicesSmsGateway(cordova.getActivity());
+    }
+    
+    /**
+     * Pre-warm on request and report the warm state
+     */
+    private void prewarm(CallbackContext callbackContext) {
+        try {
+            prewarm();
+            JSONObject result = new JSONObject();
+            result.put("warm", true);
+            result.put("playServicesAvailable", playServicesAvailable());
+            result.put("prewarmMs", prewarmNanos / 1e6);
+            callbackContext.success(result);
+        } catch (Exception e) {
+            OTPLog.e(TAG, "Error pre-warming SMS Retriever", e);
+            callbackContext.error("Error pre-warming SMS Retriever: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Journal of received OTP events, kept in no-backup app storage so it never leaves the device
+     */
+    private synchronized OtpJournal journal() {
+        if (journal == null) {
+            Context context = cordova.getActivity().getApplicationContext();
+            File dir = Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP ? context.getNoBackupFilesDir() : context.getFilesDir();
+            journal = new OtpJournal(new File(dir, JOURNAL_FILE), JOURNAL_TTL_MS);
+        }
+        return journal;
+    }
+    
+    /**
+     * Learned arrival latencies, loaded from shared preferences on first use
+     */
+    private synchronized ArrivalStats arrivalStats() {
+        if (arrivalStats == null) {
+            arrivalStats = new ArrivalStats(cordova.getActivity().getApplicationContext()
+                    .getSharedPreferences(ARRIVAL_STATS_PREFERENCES, Context.MODE_PRIVATE));
+        }
+        return arrivalStats;
+    }
+    
+    /**
+     * Register the cached receiver once; later arms reuse the registration
+     */
+    private synchronized void registerReceiverIfNeeded() {
+        if (receiverRegistered) return;
+        
+        IntentFilter intentFilter = new IntentFilter(SmsRetriever.SMS_RETRIEVED_ACTION);
+        
+        // Handle Android 13+ (API 33) receiver export requirements
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+            cordova.getActivity().registerReceiver(smsReceiver, intentFilter, SmsRetriever.SEND_PERMISSION, null, Context.RECEIVER_EXPORTED);
+        } else {
+            cordova.getActivity().registerReceiver(smsReceiver, intentFilter, SmsRetriever.SEND_PERMISSION, null);
+        }
+        receiverRegistered = true;
+        receiverRegistrations++;
+        OTPLog.d(TAG, "SMS Broadcast Receiver registered successfully");
+    }
+    
+    /**
+     * Unregister the cached receiver, keeping the instance for the next arm
+     */
+    private synchronized void unregisterReceiverIfNeeded() {
+        if (!receiverRegistered) return;
+        
+        receiverRegistered = false;
+        receiverUnregistrations++;
+        cordova.getActivity().unregisterReceiver(smsReceiver);
+    }
+    
+    /**
+     * Compile sender templates once and cache them for the lifetime of the plugin
+     */
+    private void registerTemplates(JSONArray templates, CallbackContext callbackContext) {
+        try {
+            templateRegistry = TemplateRegistry.compile(templates);
+            callbackContext.success(templateRegistry.size());
+        } catch (JSONException e) {
+            OTPLog.e(TAG, "Invalid OTP templates", e);
+            callbackContext.error("Invalid OTP templates: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Check if we have required permissions; load tests with a scripted gateway need none
+     */
+    boolean hasRequiredPermissions() {
         String[] permissions = {
             "android.permission.RECEIVE_SMS",
             "android.permission.READ_PHONE_STATE"
@@ -137,109 +415,440 @@ public class OTPReader extends CordovaPlugin {
             }
             
             if (allGranted && permissionCallbackContext != null) {
-                startListeningWithPermissions(pendingSenderPhoneNumber, permissionCallbackContext);
+                startListeningWithPermissions(pendingSenderPhoneNumber, pendingOptions, permissionCallbackContext);
             } else if (permissionCallbackContext != null) {
                 permissionCallbackContext.error("SMS permissions denied. Please grant SMS permissions to use OTP auto-reading.");
             }
             
             permissionCallbackContext = null;
             pendingSenderPhoneNumber = null;
+            pendingOptions = null;
         }
     }
     
     /**
      * Start listening with permissions already granted
      */
-    private void startListeningWithPermissions(String senderPhoneNumber, CallbackContext callbackContext) {
-        
-        this.otpCallbackContext = callbackContext;
+    private void startListeningWithPermissions(String senderPhoneNumber, JSONObject options, CallbackContext callbackContext) {
         
         // Register broadcast receiver with better error handling
         try {
-            smsReceiver = new SMSBroadcastReceiver(this);
-            IntentFilter intentFilter = new IntentFilter(SmsRetriever.SMS_RETRIEVED_ACTION);
-            
-            // Handle Android 13+ (API 33) receiver export requirements
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
-                cordova.getActivity().registerReceiver(smsReceiver, intentFilter, SmsRetriever.SEND_PERMISSION, null, Context.RECEIVER_EXPORTED);
-            } else {
-                cordova.getActivity().registerReceiver(smsReceiver, intentFilter, SmsRetriever.SEND_PERMISSION, null);
+            prewarm();
+            if (!playServicesAvailable()) {
+                callbackContext.error("Google Play Services not available (status " + playServicesStatus + ")");
+                return;
             }
-            
-            Log.d(TAG, "SMS Broadcast Receiver registered successfully");
+            registerReceiverIfNeeded();
         } catch (Exception e) {
-            Log.e(TAG, "Failed to register SMS receiver", e);
+            OTPLog.e(TAG, "Failed to register SMS receiver", e);
             callbackContext.error("Failed to register SMS receiver: " + e.getMessage());
             return;
         }
         
-        // Start SMS User Consent
-        Log.d(TAG, "=== STARTING SMS USER CONSENT ===");
-        Log.d(TAG, "Sender phone number parameter: " + (senderPhoneNumber != null ? "'" + senderPhoneNumber + "'" : "null (any sender)"));
-        Log.d(TAG, "NOTE: SMS must be sent AFTER this point to be detected");
+        final ListenSession session = new ListenSession("otp-" + sessionCounter.incrementAndGet(), senderPhoneNumber, callbackContext, options);
+        
+        // Consent results don't say who sent them, so all consent sessions must share the request's sender filter
+        if (session.mode == ListenSession.MODE_CONSENT) {
+            for (ListenSession other : sessions.values()) {
+                if (other.mode == ListenSession.MODE_CONSENT && !sameSender(other.senderFilter, session.senderFilter)) {
+                    callbackContext.error("Already listening for SMS from " + describeSender(other.senderFilter)
+                            + "; stop that session before listening for SMS from " + describeSender(session.senderFilter));
+                    return;
+                }
+            }
+        }
+        sessions.put(session.id, session);
+        
+        if (session.armDelayMs > 0) {
+            // Delayed arming, e.g. just before the backend sends the SMS; the session id is reported right away
+            send(session, ResultWriter.begin()
+                    .put("event", "scheduled")
+                    .put("listening", false)
+                    .put("sessionId", session.id)
+                    .put("armDelayMs", session.armDelayMs)
+                    .toJson());
+            scheduler.schedule(session.id, SessionScheduler.KIND_ARM, session.armDelayMs, new Runnable() {
+                @Override
+                public void run() {
+                    if (sessions.containsKey(session.id)) {
+                        armSession(session);
+                    }
+                }
+            });
+            return;
+        }
+        
+        armSession(session);
+    }
+    
+    /**
+     * Arm a new session, joining the shared request of its mode when one already covers it
+     */
+    private void armSession(final ListenSession session) {
+        final long armStart = SystemClock.elapsedRealtimeNanos();
+        
+        SmsRetrieverGateway.Listener armed = new SmsRetrieverGateway.Listener() {
+            @Override
+            public void onStarted() {
+                sendListeningStarted(session, armStart);
+            }
+            
+            @Override
+            public void onFailure(Exception e) {
+                removeSession(session.id);
+                session.callbackContext.error("Failed to start SMS listening: " + e.getMessage());
+            }
+        };
+        
+        if (session.mode == ListenSession.MODE_RETRIEVER) {
+            if (retrieverArmed) {
+                OTPLog.d(TAG, "SMS Retriever already armed, joining session ", session.id);
+                armed.onStarted();
+                return;
+            }
+            armRetriever(armed);
+            return;
+        }
+        
+        // One consent request serves every consent session, which all share its sender filter
+        if (consentArmed && sameSender(armedSenderFilter, session.senderFilter)) {
+            OTPLog.d(TAG, "SMS User Consent already armed, joining session ", session.id);
+            armed.onStarted();
+            return;
+        }
         
-        Task<Void> task = SmsRetriever.getClient(cordova.getActivity()).startSmsUserConsent(senderPhoneNumber);
+        armConsent(session.senderFilter, armed);
+    }
+    
+    /**
+     * Start the shared SMS Retriever request
+     * Only messages containing the app hash are delivered, directly and without a consent dialog
+     */
+    private void armRetriever(final SmsRetrieverGateway.Listener listener) {
+        OTPLog.d(TAG, "=== STARTING SMS RETRIEVER ===");
         
-        task.addOnSuccessListener(new OnSuccessListener<Void>() {
+        gateway.startSmsRetriever(new SmsRetrieverGateway.Listener() {
             @Override
-            public void onSuccess(Void aVoid) {
-                isListening = true;
-                Log.d(TAG, "=== SMS USER CONSENT STARTED SUCCESSFULLY ===");
-                Log.d(TAG, "Listening for SMS from: " + (senderPhoneNumber != null ? "'" + senderPhoneNumber + "'" : "any sender"));
-                Log.d(TAG, "⚠️  CRITICAL: Send your OTP SMS NOW! SMS sent before this point will NOT be detected");
-                Log.d(TAG, "SMS User Consent will timeout after 5 minutes if no SMS received");
+            public void onStarted() {
+                retrieverArmed = true;
+                retrieverArmedAt = SystemClock.elapsedRealtimeNanos();
+                OTPLog.d(TAG, "=== SMS RETRIEVER STARTED SUCCESSFULLY ===");
+                listener.onStarted();
+            }
+            
+            @Override
+            public void onFailure(Exception e) {
+                OTPLog.e(TAG, "Failed to start SMS Retriever", e);
+                listener.onFailure(e);
+            }
+        });
+    }
+    
+    /**
+     * Start the shared SMS User Consent request
+     */
+    private void armConsent(final String consentFilter, final SmsRetrieverGateway.Listener listener) {
+        OTPLog.d(TAG, "=== STARTING SMS USER CONSENT ===");
+        OTPLog.d(TAG, "Sender phone number parameter: ", consentFilter != null ? consentFilter : "null (any sender)");
+        OTPLog.d(TAG, "NOTE: SMS must be sent AFTER this point to be detected");
+        
+        gateway.startSmsUserConsent(consentFilter, new SmsRetrieverGateway.Listener() {
+            @Override
+            public void onStarted() {
+                consentArmed = true;
+                consentArmedAt = SystemClock.elapsedRealtimeNanos();
+                armedSenderFilter = consentFilter;
+                OTPLog.d(TAG, "=== SMS USER CONSENT STARTED SUCCESSFULLY ===");
+                OTPLog.d(TAG, "Listening for SMS from: ", consentFilter != null ? consentFilter : "any sender");
+                OTPLog.d(TAG, "CRITICAL: Send your OTP SMS NOW! SMS sent before this point will NOT be detected");
+                OTPLog.d(TAG, "SMS User Consent will timeout after 5 minutes if no SMS received");
                 
-                // Return immediate success to indicate listening started
-                try {
-                    JSONObject result = new JSONObject();
-                    result.put("listening", true);
-                    result.put("message", "Started listening for SMS. Send OTP now.");
-                    result.put("senderFilter", senderPhoneNumber != null ? senderPhoneNumber : "any");
-                    
-                    PluginResult pluginResult = new PluginResult(PluginResult.Status.OK, result);
-                    pluginResult.setKeepCallback(true);
-                    callbackContext.sendPluginResult(pluginResult);
-                } catch (JSONException e) {
-                    Log.e(TAG, "Error creating start listening result", e);
-                }
+                listener.onStarted();
+            }
+            
+            @Override
+            public void onFailure(Exception e) {
+                OTPLog.e(TAG, "=== FAILED TO START SMS USER CONSENT ===");
+                OTPLog.e(TAG, "Failed to start SMS User Consent", e);
+                listener.onFailure(e);
             }
         });
+    }
+    
+    /**
+     * Re-arm the consent request for continuous sessions once it has been spent by a result or timeout
+     * @param spentAt elapsedRealtimeNanos when the previous consent request ended
+     */
+    private void scheduleRearm(final long spentAt) {
+        long delay = -1;
+        for (ListenSession session : sessions.values()) {
+            if (!session.canRearm()) continue;
+            long sessionDelay = session.nextRearmDelayMs();
+            if (delay < 0 || sessionDelay < delay) delay = sessionDelay;
+        }
+        if (delay < 0) return;
         
-        task.addOnFailureListener(new OnFailureListener() {
+        mainHandler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                rearm(spentAt);
+            }
+        }, delay);
+    }
+    
+    private void rearm(final long spentAt) {
+        boolean consentWanted = false;
+        boolean retrieverWanted = false;
+        for (ListenSession session : sessions.values()) {
+            if (!session.canRearm()) continue;
+            if (session.mode == ListenSession.MODE_RETRIEVER) {
+                retrieverWanted = true;
+            } else {
+                consentWanted = true;
+            }
+        }
+        
+        // A startListening call may have armed a new request in the meantime
+        if (consentWanted && !consentArmed) {
+            armConsent(consentSenderFilter(), rearmListener(spentAt, ListenSession.MODE_CONSENT));
+        }
+        if (retrieverWanted && !retrieverArmed) {
+            armRetriever(rearmListener(spentAt, ListenSession.MODE_RETRIEVER));
+        }
+    }
+    
+    private SmsRetrieverGateway.Listener rearmListener(final long spentAt, final int mode) {
+        return new SmsRetrieverGateway.Listener() {
+            @Override
+            public void onStarted() {
+                lastRearmGapNanos = SystemClock.elapsedRealtimeNanos() - spentAt;
+                for (ListenSession session : sessions.values()) {
+                    if (!session.isMode(mode) || !session.canRearm()) continue;
+                    session.rearmCount++;
+                    session.armedAt = SystemClock.elapsedRealtimeNanos();
+                    scheduleWarning(session);
+                    sendRearmed(session);
+                }
+            }
+            
             @Override
             public void onFailure(Exception e) {
-                isListening = false;
-                Log.e(TAG, "=== FAILED TO START SMS USER CONSENT ===");
-                Log.e(TAG, "Failed to start SMS User Consent", e);
-                Log.e(TAG, "Error message: " + e.getMessage());
-                callbackContext.error("Failed to start SMS listening: " + e.getMessage());
+                for (ListenSession session : sessions.values()) {
+                    if (session.isMode(mode) && session.canRearm()) {
+                        sessions.remove(session.id);
+                        scheduler.cancel(session.id);
+                        session.callbackContext.error("Failed to re-arm SMS listening: " + e.getMessage());
+                    }
+                }
+                if (sessions.isEmpty()) {
+                    releaseConsent();
+                }
+            }
+        };
+    }
+    
+    /**
+     * Tell a continuous session that listening resumed, with the gap since the previous request ended
+     */
+    private void sendRearmed(ListenSession session) {
+        send(session, ResultWriter.begin()
+                .put("event", "rearmed")
+                .put("listening", true)
+                .put("rearmed", true)
+                .put("sessionId", session.id)
+                .put("rearmCount", session.rearmCount)
+                .put("rearmsRemaining", session.maxRearms - session.rearmCount)
+                .putMillis("rearmGapMs", lastRearmGapNanos)
+                .toJson());
+    }
+    
+    /**
+     * Sender filter for the shared consent request: the one filter all consent sessions share
+     */
+    private String consentSenderFilter() {
+        for (ListenSession session : sessions.values()) {
+            if (session.mode == ListenSession.MODE_CONSENT) return session.senderFilter;
+        }
+        return null;
+    }
+    
+    private static boolean sameSender(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+    
+    private static String describeSender(String senderFilter) {
+        return senderFilter != null ? senderFilter : "any sender";
+    }
+    
+    /**
+     * Return immediate success to indicate listening started for a session
+     * Also starts the session's deadline and early-warning timers
+     */
+    private void sendListeningStarted(final ListenSession session, long armStart) {
+        session.armedAt = SystemClock.elapsedRealtimeNanos();
+        lastArmLatencyNanos = session.armedAt - armStart;
+        send(session, ResultWriter.begin()
+                .put("event", "listening")
+                .put("listening", true)
+                .put("sessionId", session.id)
+                .put("message", "Started listening for SMS. Send OTP now.")
+                .put("senderFilter", session.senderFilter != null ? session.senderFilter : "any")
+                .putMillis("armLatencyMs", lastArmLatencyNanos)
+                .put("expectedArrivalMs", arrivalStats().expectedMs(session.senderFilter))
+                .toJson());
+        
+        if (session.deadlineMs > 0) {
+            scheduler.schedule(session.id, SessionScheduler.KIND_DEADLINE, session.deadlineMs, new Runnable() {
+                @Override
+                public void run() {
+                    if (!sessions.containsKey(session.id)) return;
+                    send(session, ResultWriter.begin()
+                            .put("event", "deadline")
+                            .put("sessionId", session.id)
+                            .put("success", false)
+                            .put("timeout", true)
+                            .put("message", "OTP deadline reached")
+                            .toJson());
+                    removeSession(session.id);
+                }
+            });
+        }
+        scheduleWarning(session);
+    }
+    
+    /**
+     * Warn a session that its SMS is later than expected, once per arm
+     */
+    private void scheduleWarning(final ListenSession session) {
+        final long expectedMs = arrivalStats().expectedMs(session.senderFilter);
+        long warnAfterMs = session.warnAfterMs == ListenSession.WARN_AUTO ? expectedMs : session.warnAfterMs;
+        if (warnAfterMs <= 0) return;
+        
+        scheduler.schedule(session.id, SessionScheduler.KIND_WARNING, warnAfterMs, new Runnable() {
+            @Override
+            public void run() {
+                if (!sessions.containsKey(session.id)) return;
+                send(session, ResultWriter.begin()
+                        .put("event", "warning")
+                        .put("sessionId", session.id)
+                        .put("message", "OTP SMS is taking longer than expected")
+                        .putMillis("elapsedMs", SystemClock.elapsedRealtimeNanos() - session.armedAt)
+                        .put("expectedArrivalMs", expectedMs)
+                        .toJson());
             }
         });
     }
     
     /**
      * Stop listening for SMS messages
+     * @param sessionId Session to stop, or null to stop all sessions
      */
-    private void stopListening(CallbackContext callbackContext) {
-        if (!isListening) {
+    private void stopListening(String sessionId, CallbackContext callbackContext) {
+        if (sessions.isEmpty()) {
             callbackContext.error("Not currently listening for SMS messages");
             return;
         }
+        if (sessionId != null && !sessions.containsKey(sessionId)) {
+            callbackContext.error("No listening session with id " + sessionId);
+            return;
+        }
         
         try {
-            if (smsReceiver != null) {
-                cordova.getActivity().unregisterReceiver(smsReceiver);
-                smsReceiver = null;
+            if (sessionId != null) {
+                removeSession(sessionId);
+            } else {
+                sessions.clear();
+                scheduler.clear();
+                releaseConsent();
             }
-            isListening = false;
-            otpCallbackContext = null;
             callbackContext.success("Stopped listening for SMS messages");
         } catch (Exception e) {
-            Log.e(TAG, "Error stopping SMS listener", e);
+            OTPLog.e(TAG, "Error stopping SMS listener", e);
             callbackContext.error("Error stopping SMS listener: " + e.getMessage());
         }
     }
     
+    /**
+     * Remove one session, releasing the shared receiver once no sessions remain
+     */
+    private void removeSession(String sessionId) {
+        sessions.remove(sessionId);
+        scheduler.cancel(sessionId);
+        if (sessions.isEmpty()) {
+            releaseConsent();
+        }
+    }
+    
+    /**
+     * Unregister the shared receiver and forget the armed consent and retriever requests,
+     * along with a consent dialog still waiting for the app to resume
+     */
+    private void releaseConsent() {
+        consentArmed = false;
+        retrieverArmed = false;
+        armedSenderFilter = null;
+        unregisterReceiverIfNeeded();
+        mainHandler.post(discardQueuedConsent);
+    }
+    
+    /**
+     * Deliver a keep-callback result to the sessions served by the request it came from
+     * @param fields Encoded result fields (see ResultWriter#fields), shared by all sessions
+     * @param mode Mode of the request
+     * @param senderFilter Sender filter the request was armed with
+     * @return Number of sessions the result was sent to
+     */
+    private int dispatch(String fields, int mode, String senderFilter) {
+        int delivered = 0;
+        for (ListenSession session : sessions.values()) {
+            if (!session.receives(mode, senderFilter)) continue;
+            
+            send(session, ResultWriter.begin().put("sessionId", session.id).putFields(fields).toJson());
+            delivered++;
+        }
+        return delivered;
+    }
+    
+    /**
+     * Deliver a consent result to the page of a recreated activity, through Cordova's resume event
+     * @return Whether a restored callback was waiting for it
+     */
+    private boolean dispatchRestored(String fields) {
+        CallbackContext callbackContext = restoredCallbackContext;
+        if (callbackContext == null) return false;
+        
+        restoredCallbackContext = null;
+        ResultWriter result = ResultWriter.begin();
+        if (restoredSessionId != null) {
+            result.put("sessionId", restoredSessionId);
+        }
+        callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK,
+                result.put("restored", true).putFields(fields).toJson()));
+        return true;
+    }
+    
+    /**
+     * Send an encoded keep-callback result; the JS layer decodes it back into an object
+     */
+    private void send(ListenSession session, String json) {
+        PluginResult pluginResult = new PluginResult(PluginResult.Status.OK, json);
+        pluginResult.setKeepCallback(true);
+        session.callbackContext.sendPluginResult(pluginResult);
+    }
+    
+    /**
+     * Fail every session; error results finish their callbacks
+     */
+    private void dispatchError(String message) {
+        Iterator<ListenSession> iterator = sessions.values().iterator();
+        while (iterator.hasNext()) {
+            iterator.next().callbackContext.error(message);
+            iterator.remove();
+        }
+        scheduler.clear();
+        releaseConsent();
+    }
+    
     /**
      * Get phone number from device (if available and permitted)
      */
@@ -260,10 +869,10 @@ public class OTPReader extends CordovaPlugin {
                 callbackContext.error("TelephonyManager not available");
             }
         } catch (SecurityException e) {
-            Log.e(TAG, "Permission denied for reading phone number", e);
+            OTPLog.e(TAG, "Permission denied for reading phone number", e);
             callbackContext.error("Permission denied to read phone number");
         } catch (Exception e) {
-            Log.e(TAG, "Error getting phone number", e);
+            OTPLog.e(TAG, "Error getting phone number", e);
             callbackContext.error("Error getting phone number: " + e.getMessage());
         }
     }
@@ -274,19 +883,41 @@ public class OTPReader extends CordovaPlugin {
     private void getDebugInfo(CallbackContext callbackContext) {
         try {
             JSONObject debugInfo = new JSONObject();
-            debugInfo.put("isListening", isListening);
-            debugInfo.put("hasReceiver", smsReceiver != null);
+            debugInfo.put("isListening", !sessions.isEmpty());
+            debugInfo.put("consentArmed", consentArmed);
+            debugInfo.put("retrieverArmed", retrieverArmed);
+            debugInfo.put("activeSessions", new JSONArray(sessions.keySet()));
+            debugInfo.put("hasReceiver", receiverRegistered);
+            debugInfo.put("receiverRegistrations", receiverRegistrations);
+            debugInfo.put("receiverUnregistrations", receiverUnregistrations);
+            debugInfo.put("prewarmed", gateway != null);
+            debugInfo.put("prewarmMs", prewarmNanos / 1e6);
+            debugInfo.put("pluginInitMs", initNanos / 1e6);
+            debugInfo.put("firstUseAfterProcessStartMs", firstUseAfterProcessStartMs);
+            debugInfo.put("lastArmLatencyMs", lastArmLatencyNanos / 1e6);
+            debugInfo.put("lastRearmGapMs", lastRearmGapNanos / 1e6);
+            debugInfo.put("journalEntries", journal != null ? journal.size() : 0);
+            debugInfo.put("duplicateMessagesSuppressed", dedupCache.suppressedCount());
+            debugInfo.put("duplicateConsentsSuppressed", duplicateConsentsSuppressed);
+            debugInfo.put("scheduledTimers", scheduler.size());
+            // Diagnostics never warm the plugin up; state that isn't loaded yet is reported as null or left out
+            ArrivalStats stats = arrivalStats;
+            debugInfo.put("arrivalLatency", stats != null ? stats.toJson() : JSONObject.NULL);
+            debugInfo.put("logLevel", OTPLog.levelName(OTPLog.getLevel()));
+            debugInfo.put("logTrace", OTPLog.getTrace());
             debugInfo.put("androidVersion", Build.VERSION.SDK_INT);
             debugInfo.put("androidRelease", Build.VERSION.RELEASE);
             
-            // Check Google Play Services availability
-            try {
-                Context context = cordova.getActivity();
-                int playServicesStatus = GoogleApiAvailability.getInstance().isGooglePlayServicesAvailable(context);
-                debugInfo.put("playServicesAvailable", playServicesStatus == ConnectionResult.SUCCESS);
-                debugInfo.put("playServicesStatusCode", playServicesStatus);
-            } catch (Exception e) {
-                debugInfo.put("playServicesError", e.getMessage());
+            // Check Google Play Services availability, once the gateway exists
+            SmsRetrieverGateway current = gateway;
+            if (current != null) {
+                try {
+                    int playServicesStatus = current.availabilityStatus();
+                    debugInfo.put("playServicesAvailable", playServicesStatus == ConnectionResult.SUCCESS);
+                    debugInfo.put("playServicesStatusCode", playServicesStatus);
+                } catch (Exception e) {
+                    debugInfo.put("playServicesError", e.getMessage());
+                }
             }
             
             // Check permissions
@@ -304,25 +935,191 @@ public class OTPReader extends CordovaPlugin {
             
             callbackContext.success(debugInfo);
         } catch (Exception e) {
-            Log.e(TAG, "Error getting debug info", e);
+            OTPLog.e(TAG, "Error getting debug info", e);
             callbackContext.error("Error getting debug info: " + e.getMessage());
         }
     }
     
+    /**
+     * Change the native log level at runtime, optionally resizing the in-memory trace buffer
+     */
+    private void setLogLevel(String levelName, int traceSize, CallbackContext callbackContext) {
+        int level = OTPLog.parseLevel(levelName, -1);
+        if (level < 0) {
+            callbackContext.error("Unknown log level: " + levelName);
+            return;
+        }
+        
+        OTPLog.setLevel(level);
+        if (traceSize >= 0) {
+            OTPLog.setTraceCapacity(traceSize);
+        }
+        callbackContext.success(OTPLog.levelName(level));
+    }
+    
+    /**
+     * Compute the 11-character app signature hash that SMS Retriever messages must contain
+     */
+    private void getAppHash(CallbackContext callbackContext) {
+        try {
+            JSONArray hashes = new JSONArray(AppSignatureHelper.getAppSignatures(cordova.getActivity()));
+            if (hashes.length() == 0) {
+                callbackContext.error("No app signature found");
+                return;
+            }
+            callbackContext.success(hashes);
+        } catch (Exception e) {
+            OTPLog.e(TAG, "Error computing app hash", e);
+            callbackContext.error("Error computing app hash: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Get per-stage latency percentiles for recent OTP sessions
+     */
+    private void getMetrics(CallbackContext callbackContext) {
+        try {
+            callbackContext.success(latencyMetrics.snapshot());
+        } catch (JSONException e) {
+            OTPLog.e(TAG, "Error getting metrics", e);
+            callbackContext.error("Error getting metrics: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Drain OTP events that were received but may not have reached JS, e.g. after a reload or restart
+     * @param includeDelivered Also return events that were sent to a listening session
+     */
+    private void getPendingOtp(boolean includeDelivered, CallbackContext callbackContext) {
+        try {
+            callbackContext.success(journal().drain(includeDelivered));
+        } catch (Exception e) {
+            OTPLog.e(TAG, "Error reading OTP journal", e);
+            callbackContext.error("Error reading OTP journal: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Latency instrumentation shared with the broadcast receiver
+     */
+    LatencyMetrics getLatencyMetrics() {
+        return latencyMetrics;
+    }
+    
     /**
      * Handle consent dialog for SMS reading
+     * Called from the receiver pipeline thread; only the activity launch runs on the UI thread
      */
-    public void handleSMSConsent(Intent consentIntent) {
+    public void handleSMSConsent(final Intent consentIntent) {
+        // A broadcast still in the pipeline when listening stopped; nobody asks for a dialog anymore
+        if (sessions.isEmpty()) {
+            OTPLog.d(TAG, "Not listening, ignoring SMS consent broadcast");
+            return;
+        }
+        
+        // A spent consent request delivers one message; another broadcast while its dialog is open is a duplicate
+        if (consentInFlight) {
+            duplicateConsentsSuppressed++;
+            OTPLog.d(TAG, "Consent dialog already shown, ignoring duplicate broadcast");
+            return;
+        }
+        consentInFlight = true;
+        lastBroadcastAt = SystemClock.elapsedRealtimeNanos();
+        
+        // The consent request is spent once a message has been retrieved; its result goes to the sessions it served
+        consentDialogSenderFilter = armedSenderFilter;
+        consentArmed = false;
+        cordova.getActivity().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                if (sessions.isEmpty()) {
+                    // Listening stopped before the dialog could be shown
+                    consentInFlight = false;
+                    return;
+                }
+                if (paused) {
+                    // Launching from the background may be blocked; show the dialog as soon as the app is back
+                    OTPLog.d(TAG, "App paused, queueing consent dialog until resume");
+                    queuedConsentIntent = consentIntent;
+                    return;
+                }
+                launchConsent(consentIntent);
+            }
+        });
+    }
+    
+    /**
+     * Show the consent dialog; must run on the UI thread
+     */
+    private void launchConsent(Intent consentIntent) {
         try {
+            latencyMetrics.mark(LatencyMetrics.STAGE_CONSENT_LAUNCHED);
             cordova.startActivityForResult(this, consentIntent, SMS_CONSENT_REQUEST);
         } catch (ActivityNotFoundException e) {
-            Log.e(TAG, "Activity not found for SMS consent", e);
-            if (otpCallbackContext != null) {
-                otpCallbackContext.error("SMS consent dialog could not be shown");
-            }
+            consentInFlight = false;
+            OTPLog.e(TAG, "Activity not found for SMS consent", e);
+            dispatchError("SMS consent dialog could not be shown");
+        }
+    }
+    
+    @Override
+    public void onPause(boolean multitasking) {
+        paused = true;
+    }
+    
+    /**
+     * Launch a consent dialog that arrived while the app was in the background
+     */
+    @Override
+    public void onResume(boolean multitasking) {
+        paused = false;
+        discardQueuedConsent.run();
+        if (queuedConsentIntent != null) {
+            Intent consentIntent = queuedConsentIntent;
+            queuedConsentIntent = null;
+            launchConsent(consentIntent);
         }
     }
     
+    /**
+     * Test seam: hand an SMS_RETRIEVED_ACTION intent to the receiver, as the system does for a broadcast
+     * Scripted gateways use it instead of sending real broadcasts, which only Play Services may send
+     */
+    void deliverBroadcast(Intent intent) {
+        prewarm();
+        smsReceiver.onReceive(cordova.getActivity(), intent);
+    }
+    
+    /**
+     * Cordova asks every plugin on every save; state is only kept while the consent dialog is open,
+     * in case the activity is destroyed behind it
+     */
+    @Override
+    public Bundle onSaveInstanceState() {
+        if (!consentInFlight) return null;
+        
+        Bundle state = new Bundle();
+        String[] sessionIds = sessions.keySet().toArray(new String[0]);
+        state.putStringArray("sessionIds", sessionIds);
+        state.putInt("sessionCounter", sessionCounter.get());
+        return state;
+    }
+    
+    /**
+     * The activity was recreated while the consent dialog was open
+     * The consent result is delivered once, through the resume event's pendingResult; JS has to start listening again
+     */
+    @Override
+    public void onRestoreStateForActivityResult(Bundle state, CallbackContext callbackContext) {
+        String[] sessionIds = state != null ? state.getStringArray("sessionIds") : null;
+        if (state != null) {
+            sessionCounter.set(Math.max(sessionCounter.get(), state.getInt("sessionCounter")));
+        }
+        restoredSessionId = sessionIds != null && sessionIds.length > 0 ? sessionIds[0] : null;
+        restoredCallbackContext = callbackContext;
+        consentInFlight = true;
+    }
+    
     /**
      * Handle activity results
      */
@@ -331,6 +1128,8 @@ public class OTPReader extends CordovaPlugin {
         super.onActivityResult(requestCode, resultCode, data);
         
         if (requestCode == SMS_CONSENT_REQUEST) {
+            consentInFlight = false;
+            latencyMetrics.mark(LatencyMetrics.STAGE_ACTIVITY_RESULT);
             handleSMSConsentResult(resultCode, data);
         }
     }
@@ -339,63 +1138,228 @@ public class OTPReader extends CordovaPlugin {
      * Handle SMS consent result
      */
     private void handleSMSConsentResult(int resultCode, Intent data) {
-        if (otpCallbackContext == null) return;
-        
         if (resultCode == Activity.RESULT_OK && data != null) {
             String message = data.getStringExtra(SmsRetriever.EXTRA_SMS_MESSAGE);
             if (message != null) {
-                try {
-                    JSONObject result = new JSONObject();
-                    result.put("message", message);
-                    result.put("success", true);
-                    
-                    PluginResult pluginResult = new PluginResult(PluginResult.Status.OK, result);
-                    pluginResult.setKeepCallback(true);
-                    otpCallbackContext.sendPluginResult(pluginResult);
-                } catch (JSONException e) {
-                    Log.e(TAG, "Error creating JSON result", e);
-                    otpCallbackContext.error("Error processing SMS message");
-                }
-            } else {
-                otpCallbackContext.error("No SMS message received");
+                // Journaled even without a listening session, for getPendingOtp to recover
+                deliverMessage(message, ListenSession.MODE_CONSENT, consentDialogSenderFilter);
+            } else if (!sessions.isEmpty()) {
+                dispatchError("No SMS message received");
             }
-        } else {
+        } else if (!sessions.isEmpty() || restoredCallbackContext != null) {
             // User denied consent or cancelled
-            try {
-                JSONObject result = new JSONObject();
-                result.put("success", false);
-                result.put("userCancelled", true);
-                result.put("message", "User denied SMS access or cancelled");
-                
-                PluginResult pluginResult = new PluginResult(PluginResult.Status.OK, result);
-                pluginResult.setKeepCallback(true);
-                otpCallbackContext.sendPluginResult(pluginResult);
-            } catch (JSONException e) {
-                Log.e(TAG, "Error creating JSON result", e);
-                otpCallbackContext.error("User denied SMS access");
+            dispatch(CANCELLED_FIELDS, ListenSession.MODE_CONSENT, consentDialogSenderFilter);
+            dispatchRestored(CANCELLED_FIELDS);
+        }
+        
+        scheduleRearm(SystemClock.elapsedRealtimeNanos());
+    }
+    
+    /**
+     * Handle a message delivered directly by the SMS Retriever (no consent dialog)
+     * Called from the receiver pipeline thread
+     */
+    public void handleRetrievedMessage(String message) {
+        final long spentAt = SystemClock.elapsedRealtimeNanos();
+        lastBroadcastAt = spentAt;
+        retrieverArmed = false;
+        
+        // Carriers occasionally deliver the same SMS twice; its OTP has already been delivered.
+        // Consent results are never filtered: the user approved that message
+        if (dedupCache.isDuplicate(DedupCache.hash(message), spentAt)) {
+            OTPLog.d(TAG, "Ignoring duplicate SMS message");
+        } else {
+            deliverMessage(message, ListenSession.MODE_RETRIEVER, null);
+        }
+        
+        // Session re-arm state is only touched on the main thread
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                scheduleRearm(spentAt);
             }
+        });
+    }
+    
+    /**
+     * Extract the OTP, journal it and deliver it to the sessions served by the request it came from
+     * The journal entry stays pending unless a session received the result
+     * @param mode Mode of the request that retrieved the message
+     * @param senderFilter Sender filter the request was armed with
+     */
+    private void deliverMessage(String message, final int mode, final String senderFilter) {
+        TemplateRegistry.Match match = templateRegistry.match(message, senderFilters(mode, senderFilter));
+        
+        // A template match is authoritative and skips the ranking pass; otherwise the best-ranked candidate is the code
+        List<OTPExtractor.Candidate> candidates = match != null
+                ? Collections.singletonList(new OTPExtractor.Candidate(match.otp, 1.0, 0))
+                : OTPExtractor.candidates(message, OTPExtractor.ANY_LENGTH);
+        OTPExtractor.Candidate best = candidates.isEmpty() ? null : candidates.get(0);
+        String otp = best != null ? best.code : null;
+        
+        ResultWriter result = ResultWriter.begin()
+                .put("event", "otp")
+                .put("message", message)
+                .put("otp", otp)
+                .put("confidence", best != null ? best.confidence : 0.0)
+                .putRaw("candidates", OTPExtractor.toJson(candidates));
+        if (match != null) {
+            result.put("template", match.templateId);
+        }
+        final String fields = result.put("success", true).fields();
+        latencyMetrics.mark(LatencyMetrics.STAGE_JSON_BUILT);
+        
+        recordArrival();
+        final int entry = appendToJournal(fields);
+        
+        final String script = best != null ? autofillScript(best, mode, senderFilter) : null;
+        if (script == null || Looper.myLooper() == Looper.getMainLooper()) {
+            if (script != null) webView.getEngine().evaluateJavascript(script, null);
+            dispatchResult(fields, mode, senderFilter, entry);
+        } else {
+            // Filled and dispatched in one main-thread task, so the field is filled before JS handles the event
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    webView.getEngine().evaluateJavascript(script, null);
+                    dispatchResult(fields, mode, senderFilter, entry);
+                }
+            });
+        }
+    }
+    
+    /**
+     * Dispatch an OTP result and mark its journal entry delivered if a session received it
+     */
+    private void dispatchResult(String fields, int mode, String senderFilter, int entry) {
+        // The restored callback waits for a consent result, and is only touched on the main thread
+        boolean restored = mode == ListenSession.MODE_CONSENT && dispatchRestored(fields);
+        if (dispatch(fields, mode, senderFilter) + (restored ? 1 : 0) > 0) {
+            markJournalDelivered(entry);
+        }
+        latencyMetrics.mark(LatencyMetrics.STAGE_DELIVERED);
+    }
+    
+    /**
+     * Journal a result before it is dispatched; a journal failure never holds up delivery
+     * @return Entry id, or 0 if the result could not be journaled
+     */
+    private int appendToJournal(String fields) {
+        try {
+            int entry = journal().append(fields);
+            // Wipe the entry from storage once it expires, even if nothing else touches the journal
+            mainHandler.removeCallbacks(journalExpiry);
+            mainHandler.postDelayed(journalExpiry, JOURNAL_TTL_MS);
+            return entry;
+        } catch (Exception e) {
+            OTPLog.e(TAG, "Error writing OTP journal", e);
+            return 0;
+        }
+    }
+    
+    private void markJournalDelivered(int entry) {
+        try {
+            journal().markDelivered(entry);
+        } catch (Exception e) {
+            OTPLog.e(TAG, "Error updating OTP journal", e);
         }
     }
     
+    /**
+     * Sender filters that decide the templates that apply: the consent request's own filter,
+     * or those of the retriever sessions
+     */
+    private List<String> senderFilters(int mode, String senderFilter) {
+        if (mode == ListenSession.MODE_CONSENT) {
+            return Collections.singletonList(senderFilter);
+        }
+        List<String> filters = new ArrayList<String>(sessions.size());
+        for (ListenSession session : sessions.values()) {
+            if (session.isMode(mode)) filters.add(session.senderFilter);
+        }
+        return filters;
+    }
+    
+    /**
+     * Learn how long the SMS took after the latest arm, and stop the sessions' early warnings
+     */
+    private void recordArrival() {
+        ListenSession latest = null;
+        for (ListenSession session : sessions.values()) {
+            scheduler.cancel(session.id, SessionScheduler.KIND_WARNING);
+            if (session.armedAt > 0 && (latest == null || session.armedAt > latest.armedAt)) latest = session;
+        }
+        
+        long arrivedAt = lastBroadcastAt;
+        if (latest != null && arrivedAt > latest.armedAt) {
+            arrivalStats().record(latest.senderFilter, (arrivedAt - latest.armedAt) / 1000000);
+        }
+    }
+    
+    /**
+     * Script that fills the code into the autofill targets of the sessions receiving it, in one evaluation
+     * A session only autofills codes from a template match or at its minimum confidence, so that
+     * an order number or a date is never written into the OTP field and submitted
+     * @return The script, or null if no session autofills this code
+     */
+    private String autofillScript(OTPExtractor.Candidate best, int mode, String senderFilter) {
+        StringBuilder script = null;
+        for (ListenSession session : sessions.values()) {
+            if (session.autofill == null || !session.receives(mode, senderFilter)) continue;
+            if (best.confidence < session.autofill.minConfidence) continue;
+            if (script == null) script = new StringBuilder();
+            script.append(session.autofill.script(best.code));
+        }
+        return script != null ? script.toString() : null;
+    }
+    
     /**
      * Handle timeout from SMS receiver
      */
     public void handleSMSTimeout() {
-        if (otpCallbackContext != null) {
-            try {
-                JSONObject result = new JSONObject();
-                result.put("success", false);
-                result.put("timeout", true);
-                result.put("message", "SMS listening timeout occurred");
-                
-                PluginResult pluginResult = new PluginResult(PluginResult.Status.OK, result);
-                pluginResult.setKeepCallback(true);
-                otpCallbackContext.sendPluginResult(pluginResult);
-            } catch (JSONException e) {
-                Log.e(TAG, "Error creating JSON result", e);
-                otpCallbackContext.error("SMS listening timeout");
-            }
+        final long spentAt = SystemClock.elapsedRealtimeNanos();
+        
+        // Timeouts don't say which request expired; with both armed, the older one expires first
+        int mode;
+        if (consentArmed && retrieverArmed) {
+            mode = consentArmedAt <= retrieverArmedAt ? ListenSession.MODE_CONSENT : ListenSession.MODE_RETRIEVER;
+        } else {
+            mode = retrieverArmed ? ListenSession.MODE_RETRIEVER : ListenSession.MODE_CONSENT;
+        }
+        String senderFilter = null;
+        if (mode == ListenSession.MODE_RETRIEVER) {
+            retrieverArmed = false;
+        } else {
+            senderFilter = armedSenderFilter;
+            consentArmed = false;
+        }
+        
+        if (!sessions.isEmpty()) {
+            dispatch(TIMEOUT_FIELDS, mode, senderFilter);
+            
+            // Session re-arm state is only touched on the main thread
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    scheduleRearm(spentAt);
+                }
+            });
+        }
+    }
+    
+    /**
+     * The page reloaded: session callbacks belong to the old page, so drop them
+     * Messages received from now on stay pending in the journal until getPendingOtp
+     */
+    @Override
+    public void onReset() {
+        mainHandler.removeCallbacksAndMessages(null);
+        if (journal != null) {
+            mainHandler.postDelayed(journalExpiry, JOURNAL_TTL_MS);
         }
+        scheduler.clear();
+        sessions.clear();
+        releaseConsent();
     }
     
     /**
@@ -404,16 +1368,23 @@ public class OTPReader extends CordovaPlugin {
     @Override
     public void onDestroy() {
         super.onDestroy();
-        if (isListening && smsReceiver != null) {
+        mainHandler.removeCallbacksAndMessages(null);
+        scheduler.clear();
+        if (receiverRegistered) {
             try {
-                cordova.getActivity().unregisterReceiver(smsReceiver);
+                unregisterReceiverIfNeeded();
             } catch (Exception e) {
-                Log.e(TAG, "Error unregistering receiver on destroy", e);
+                OTPLog.e(TAG, "Error unregistering receiver on destroy", e);
             }
         }
-        isListening = false;
-        otpCallbackContext = null;
+        sessions.clear();
+        consentArmed = false;
+        retrieverArmed = false;
+        armedSenderFilter = null;
         permissionCallbackContext = null;
         pendingSenderPhoneNumber = null;
+        pendingOptions = null;
+        queuedConsentIntent = null;
+        restoredCallbackContext = null;
     }
 }
@@ -0,0 +1,261 @@
+package org.apache.cordova.otpreader;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Crash-safe journal of received OTP events
+ * A fixed-size memory-mapped file in app-private storage. Appends are a single
+ * write into the mapping and are never forced to disk from the caller's thread;
+ * the kernel flushes the dirty pages, so events survive a process restart.
+ * Expired and drained entries are overwritten with zeros. A file left inconsistent
+ * by a crash mid-compaction is detected and reset
+ *
+ * Layout: header [magic][version][end][nextId], then entries of
+ * [length][id][receivedAt][state][payload...], where payload is the UTF-8 result fields
+ */
+final class OtpJournal {
+
+    static final int CAPACITY = 16 * 1024;
+
+    private static final int MAGIC = 0x4f54504a; // "OTPJ"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int POS_END = 8;
+    private static final int POS_NEXT_ID = 12;
+    private static final int ENTRY_HEADER_SIZE = 17;
+
+    private static final byte STATE_PENDING = 0;
+    private static final byte STATE_DELIVERED = 1;
+    private static final byte STATE_ERASED = 2;
+
+    private final File file;
+    private final long ttlMillis;
+    private MappedByteBuffer buffer;
+
+    OtpJournal(File file, long ttlMillis) {
+        this.file = file;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Map the journal file, creating or resetting it when missing or unreadable,
+     * and wipe entries that expired since the last call
+     */
+    synchronized void open() throws IOException {
+        if (buffer == null) {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(CAPACITY);
+                buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, CAPACITY);
+            } finally {
+                // The mapping stays valid after the channel is closed
+                raf.close();
+            }
+
+            int end = buffer.getInt(POS_END);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || end < HEADER_SIZE || end > CAPACITY) {
+                reset();
+            }
+        }
+        compact(System.currentTimeMillis());
+    }
+
+    /**
+     * Wipe expired entries; a no-op when the journal was never opened
+     */
+    synchronized void expire() {
+        if (buffer != null) compact(System.currentTimeMillis());
+    }
+
+    /**
+     * Append a received event as pending
+     * @param fields Encoded result fields (see ResultWriter#fields)
+     * @return Entry id for {@link #markDelivered(int)}, or 0 if the event could not be journaled
+     */
+    synchronized int append(String fields) {
+        if (buffer == null) {
+            try {
+                open();
+            } catch (IOException e) {
+                OTPLog.e("OtpJournal", "Unable to open OTP journal", e);
+                return 0;
+            }
+        }
+
+        byte[] payload = fields.getBytes(StandardCharsets.UTF_8);
+        int length = ENTRY_HEADER_SIZE + payload.length;
+        if (length > CAPACITY - HEADER_SIZE) return 0;
+
+        long now = System.currentTimeMillis();
+        int end = buffer.getInt(POS_END);
+        // Entries are in arrival order, so only the first needs checking to know whether any expired
+        if (end + length > CAPACITY || (end > HEADER_SIZE && now - buffer.getLong(HEADER_SIZE + 8) > ttlMillis)) {
+            end = compact(now);
+            // Still full of live events: evict the oldest until the new one fits
+            while (end + length > CAPACITY) {
+                buffer.put(HEADER_SIZE + 16, STATE_ERASED);
+                end = compact(now);
+            }
+        }
+
+        int id = buffer.getInt(POS_NEXT_ID);
+        buffer.putInt(end, length);
+        buffer.putInt(end + 4, id);
+        buffer.putLong(end + 8, now);
+        buffer.put(end + 16, STATE_PENDING);
+        for (int i = 0; i < payload.length; i++) {
+            buffer.put(end + ENTRY_HEADER_SIZE + i, payload[i]);
+        }
+        buffer.putInt(POS_NEXT_ID, id == Integer.MAX_VALUE ? 1 : id + 1);
+        // Publish the entry last, so a crash mid-append leaves it invisible
+        buffer.putInt(POS_END, end + length);
+        return id;
+    }
+
+    /**
+     * Mark an entry as delivered to a live JS callback
+     */
+    synchronized void markDelivered(int id) {
+        if (buffer == null || id == 0) return;
+
+        int end = buffer.getInt(POS_END);
+        for (int pos = HEADER_SIZE; pos < end; pos += buffer.getInt(pos)) {
+            if (!isValidEntry(pos, end)) {
+                recover();
+                return;
+            }
+            if (buffer.getInt(pos + 4) == id) {
+                if (buffer.get(pos + 16) == STATE_PENDING) buffer.put(pos + 16, STATE_DELIVERED);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Remove and return unexpired events, wiping them from the journal
+     * @param includeDelivered Also return events that were already sent to a JS callback
+     */
+    synchronized JSONArray drain(boolean includeDelivered) throws IOException, JSONException {
+        open();
+
+        JSONArray events = new JSONArray();
+        long now = System.currentTimeMillis();
+        int end = buffer.getInt(POS_END);
+        for (int pos = HEADER_SIZE; pos < end; pos += buffer.getInt(pos)) {
+            if (!isValidEntry(pos, end)) {
+                recover();
+                return events;
+            }
+            byte state = buffer.get(pos + 16);
+            long receivedAt = buffer.getLong(pos + 8);
+            if (state == STATE_ERASED || now - receivedAt > ttlMillis) continue;
+            if (state == STATE_DELIVERED && !includeDelivered) continue;
+
+            int length = buffer.getInt(pos);
+            byte[] payload = new byte[length - ENTRY_HEADER_SIZE];
+            for (int i = 0; i < payload.length; i++) {
+                payload[i] = buffer.get(pos + ENTRY_HEADER_SIZE + i);
+            }
+            buffer.put(pos + 16, STATE_ERASED);
+            wipe(pos + ENTRY_HEADER_SIZE, pos + length);
+
+            try {
+                JSONObject event = new JSONObject("{" + new String(payload, StandardCharsets.UTF_8) + "}");
+                event.put("receivedAt", receivedAt);
+                event.put("delivered", state == STATE_DELIVERED);
+                events.put(event);
+            } catch (JSONException e) {
+                // Garbage left by a crash mid-compaction; the entry is dropped
+                OTPLog.w("OtpJournal", "Dropping unreadable OTP journal entry");
+            }
+        }
+        compact(now);
+        return events;
+    }
+
+    synchronized int size() {
+        if (buffer == null) return 0;
+
+        int count = 0;
+        int end = buffer.getInt(POS_END);
+        for (int pos = HEADER_SIZE; pos < end; pos += buffer.getInt(pos)) {
+            if (!isValidEntry(pos, end)) {
+                recover();
+                return 0;
+            }
+            if (buffer.get(pos + 16) != STATE_ERASED) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Drop erased and expired entries, moving live ones to the front and zeroing the freed tail
+     * Entries are moved before the end is updated, so a crash here can leave misaligned entries;
+     * every walk validates entry lengths and resets the journal when one is out of range
+     * @return New end of the journal
+     */
+    private int compact(long now) {
+        int end = buffer.getInt(POS_END);
+        int write = HEADER_SIZE;
+        for (int pos = HEADER_SIZE; pos < end; ) {
+            if (!isValidEntry(pos, end)) {
+                recover();
+                return HEADER_SIZE;
+            }
+            int length = buffer.getInt(pos);
+            boolean live = buffer.get(pos + 16) != STATE_ERASED && now - buffer.getLong(pos + 8) <= ttlMillis;
+            if (live) {
+                if (write != pos) {
+                    for (int i = 0; i < length; i++) {
+                        buffer.put(write + i, buffer.get(pos + i));
+                    }
+                }
+                write += length;
+            }
+            pos += length;
+        }
+        wipe(write, end);
+        buffer.putInt(POS_END, write);
+        return write;
+    }
+
+    private boolean isValidEntry(int pos, int end) {
+        if (pos + ENTRY_HEADER_SIZE > end) return false;
+        int length = buffer.getInt(pos);
+        return length >= ENTRY_HEADER_SIZE && length <= end - pos;
+    }
+
+    /**
+     * Reset a journal whose entries no longer line up
+     */
+    private void recover() {
+        OTPLog.w("OtpJournal", "OTP journal corrupted, resetting it");
+        reset();
+    }
+
+    /**
+     * Drop every entry and rewrite the header
+     */
+    private void reset() {
+        wipe(0, CAPACITY);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(POS_END, HEADER_SIZE);
+        buffer.putInt(POS_NEXT_ID, 1);
+    }
+
+    private void wipe(int from, int to) {
+        for (int i = from; i < to; i++) {
+            buffer.put(i, (byte) 0);
+        }
+    }
+}
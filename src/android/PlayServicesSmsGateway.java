@@ -0,0 +1,55 @@
+package org.apache.cordova.otpreader;
+
+import android.content.Context;
+
+import com.google.android.gms.auth.api.phone.SmsRetriever;
+import com.google.android.gms.auth.api.phone.SmsRetrieverClient;
+import com.google.android.gms.common.GoogleApiAvailability;
+import com.google.android.gms.tasks.OnFailureListener;
+import com.google.android.gms.tasks.OnSuccessListener;
+import com.google.android.gms.tasks.Task;
+
+/**
+ * SmsRetrieverGateway backed by the Play Services SmsRetrieverClient
+ */
+final class PlayServicesSmsGateway implements SmsRetrieverGateway {
+
+    private final Context context;
+    private final SmsRetrieverClient client;
+
+    PlayServicesSmsGateway(Context context) {
+        this.context = context;
+        this.client = SmsRetriever.getClient(context);
+    }
+
+    @Override
+    public int availabilityStatus() {
+        return GoogleApiAvailability.getInstance().isGooglePlayServicesAvailable(context);
+    }
+
+    @Override
+    public void startSmsUserConsent(String senderPhoneNumber, Listener listener) {
+        listen(client.startSmsUserConsent(senderPhoneNumber), listener);
+    }
+
+    @Override
+    public void startSmsRetriever(Listener listener) {
+        listen(client.startSmsRetriever(), listener);
+    }
+
+    private static void listen(Task<Void> task, final Listener listener) {
+        task.addOnSuccessListener(new OnSuccessListener<Void>() {
+            @Override
+            public void onSuccess(Void aVoid) {
+                listener.onStarted();
+            }
+        });
+
+        task.addOnFailureListener(new OnFailureListener() {
+            @Override
+            public void onFailure(Exception e) {
+                listener.onFailure(e);
+            }
+        });
+    }
+}
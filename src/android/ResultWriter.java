@@ -0,0 +1,144 @@
+package org.apache.cordova.otpreader;
+
+/**
+ * Compact result encoder for keep-callback events
+ * Serializes fixed-shape JSON text straight into a reused per-thread StringBuilder,
+ * avoiding a JSONObject (and its map, boxing and second serialization) per event.
+ * The JS layer decodes the text back into the usual result object
+ */
+final class ResultWriter {
+
+    private static final ThreadLocal<ResultWriter> WRITERS = new ThreadLocal<ResultWriter>() {
+        @Override
+        protected ResultWriter initialValue() {
+            return new ResultWriter();
+        }
+    };
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final StringBuilder builder = new StringBuilder(256);
+    private boolean empty;
+
+    private ResultWriter() {
+    }
+
+    /**
+     * The calling thread's writer, reset to an empty object
+     */
+    static ResultWriter begin() {
+        ResultWriter writer = WRITERS.get();
+        writer.builder.setLength(0);
+        writer.builder.append('{');
+        writer.empty = true;
+        return writer;
+    }
+
+    ResultWriter put(String key, String value) {
+        key(key);
+        if (value == null) {
+            builder.append("null");
+        } else {
+            string(value);
+        }
+        return this;
+    }
+
+    ResultWriter put(String key, boolean value) {
+        key(key);
+        builder.append(value);
+        return this;
+    }
+
+    ResultWriter put(String key, long value) {
+        key(key);
+        builder.append(value);
+        return this;
+    }
+
+    ResultWriter put(String key, double value) {
+        key(key);
+        builder.append(value);
+        return this;
+    }
+
+    /**
+     * Write a nanosecond duration as milliseconds with microsecond precision
+     */
+    ResultWriter putMillis(String key, long nanos) {
+        key(key);
+        if (nanos < 0) {
+            builder.append('-');
+            nanos = -nanos;
+        }
+        long micros = nanos / 1000;
+        long fraction = micros % 1000;
+        builder.append(micros / 1000).append('.');
+        if (fraction < 100) builder.append('0');
+        if (fraction < 10) builder.append('0');
+        builder.append(fraction);
+        return this;
+    }
+
+    /**
+     * Append fields previously produced by {@link #fields()}
+     */
+    ResultWriter putFields(String fields) {
+        if (fields.isEmpty()) return this;
+        if (!empty) builder.append(',');
+        builder.append(fields);
+        empty = false;
+        return this;
+    }
+
+    /**
+     * Append an already-encoded JSON value (array or object)
+     */
+    ResultWriter putRaw(String key, String json) {
+        key(key);
+        builder.append(json);
+        return this;
+    }
+
+    /**
+     * The fields written so far, without the enclosing braces
+     */
+    String fields() {
+        return builder.substring(1);
+    }
+
+    String toJson() {
+        builder.append('}');
+        return builder.toString();
+    }
+
+    private void key(String key) {
+        if (!empty) builder.append(',');
+        builder.append('"').append(key).append("\":");
+        empty = false;
+    }
+
+    private void string(String value) {
+        builder.append('"');
+        for (int i = 0, n = value.length(); i < n; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': builder.append("\\\""); break;
+                case '\\': builder.append("\\\\"); break;
+                case '\n': builder.append("\\n"); break;
+                case '\r': builder.append("\\r"); break;
+                case '\t': builder.append("\\t"); break;
+                default:
+                    // Control characters and JS line separators must be escaped
+                    if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                        builder.append("\\u")
+                               .append(HEX[(c >> 12) & 0xF]).append(HEX[(c >> 8) & 0xF])
+                               .append(HEX[(c >> 4) & 0xF]).append(HEX[c & 0xF]);
+                    } else {
+                        builder.append(c);
+                    }
+            }
+        }
+        builder.append('"');
+    }
+}
@@ -0,0 +1,137 @@
+package org.apache.cordova.otpreader;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Shared timer for per-session deadlines, early warnings and delayed arming
+ * All timers live in one queue ordered by due time, with a single callback
+ * posted on the handler for the earliest one, however many sessions are active
+ */
+final class SessionScheduler {
+
+    static final int KIND_ARM = 0;
+    static final int KIND_WARNING = 1;
+    static final int KIND_DEADLINE = 2;
+
+    private static final class Entry implements Comparable<Entry> {
+        final long dueAt;
+        final long sequence;
+        final String sessionId;
+        final int kind;
+        final Runnable action;
+
+        Entry(long dueAt, long sequence, String sessionId, int kind, Runnable action) {
+            this.dueAt = dueAt;
+            this.sequence = sequence;
+            this.sessionId = sessionId;
+            this.kind = kind;
+            this.action = action;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            if (dueAt != other.dueAt) return dueAt < other.dueAt ? -1 : 1;
+            return sequence < other.sequence ? -1 : sequence == other.sequence ? 0 : 1;
+        }
+    }
+
+    private final Handler handler;
+    private final PriorityQueue<Entry> queue = new PriorityQueue<Entry>();
+    private final Runnable tick = new Runnable() {
+        @Override
+        public void run() {
+            runDue();
+        }
+    };
+    private long sequence;
+    private long postedFor = Long.MAX_VALUE;
+
+    SessionScheduler(Handler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Run an action on the handler thread after a delay, replacing any timer of the same kind for the session
+     */
+    synchronized void schedule(String sessionId, int kind, long delayMs, Runnable action) {
+        remove(sessionId, kind);
+        queue.add(new Entry(SystemClock.uptimeMillis() + Math.max(delayMs, 0), sequence++, sessionId, kind, action));
+        repost();
+    }
+
+    /**
+     * Cancel one kind of timer for a session
+     */
+    synchronized void cancel(String sessionId, int kind) {
+        if (remove(sessionId, kind)) repost();
+    }
+
+    /**
+     * Cancel every timer of a session
+     */
+    synchronized void cancel(String sessionId) {
+        if (remove(sessionId, -1)) repost();
+    }
+
+    synchronized void clear() {
+        queue.clear();
+        handler.removeCallbacks(tick);
+        postedFor = Long.MAX_VALUE;
+    }
+
+    synchronized int size() {
+        return queue.size();
+    }
+
+    private void runDue() {
+        List<Entry> due = new ArrayList<Entry>();
+        synchronized (this) {
+            postedFor = Long.MAX_VALUE;
+            long now = SystemClock.uptimeMillis();
+            while (!queue.isEmpty() && queue.peek().dueAt <= now) {
+                due.add(queue.poll());
+            }
+            repost();
+        }
+        for (Entry entry : due) {
+            try {
+                entry.action.run();
+            } catch (Exception e) {
+                OTPLog.e("SessionScheduler", "Scheduled action failed", e);
+            }
+        }
+    }
+
+    private boolean remove(String sessionId, int kind) {
+        boolean removed = false;
+        Iterator<Entry> iterator = queue.iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.sessionId.equals(sessionId) && (kind < 0 || entry.kind == kind)) {
+                iterator.remove();
+                removed = true;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Keep exactly one handler callback, due at the earliest timer
+     */
+    private void repost() {
+        long next = queue.isEmpty() ? Long.MAX_VALUE : queue.peek().dueAt;
+        if (next == postedFor) return;
+
+        handler.removeCallbacks(tick);
+        postedFor = next;
+        if (next != Long.MAX_VALUE) {
+            handler.postAtTime(tick, next);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package org.apache.cordova.otpreader;
+
+/**
+ * The SMS Retriever and SMS User Consent calls the plugin needs
+ * Keeps Play Services types out of OTPReader, so the plugin can be driven by
+ * a scripted implementation in load tests
+ */
+interface SmsRetrieverGateway {
+
+    /**
+     * Outcome of starting a request; called on the main thread
+     */
+    interface Listener {
+        void onStarted();
+
+        void onFailure(Exception e);
+    }
+
+    /**
+     * Play Services availability, as a ConnectionResult status code
+     */
+    int availabilityStatus();
+
+    /**
+     * Arm SMS User Consent for the next SMS (from the given sender, or any sender if null)
+     */
+    void startSmsUserConsent(String senderPhoneNumber, Listener listener);
+
+    /**
+     * Arm the SMS Retriever for the next SMS carrying the app hash
+     */
+    void startSmsRetriever(Listener listener);
+}
@@ -0,0 +1,379 @@
+package org.apache.cordova.otpreader;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Precompiled sender-template registry
+ * All template anchors are compiled once into a single Aho-Corasick automaton,
+ * so matching a message is one linear scan regardless of how many templates
+ * are registered
+ */
+public final class TemplateRegistry {
+
+    /** Maximum distance (in chars) between an anchor and the code it points to */
+    private static final int CODE_WINDOW = 12;
+
+    private static final int DEFAULT_MIN_LENGTH = 4;
+    private static final int DEFAULT_MAX_LENGTH = 8;
+    /** Size range of the digit groups in codes such as "123 456" */
+    private static final int MIN_GROUP = 2;
+    private static final int MAX_GROUP = 4;
+
+    /**
+     * Extraction rule for one sender template
+     */
+    static final class Template {
+        final String id;
+        final String sender;
+        final int length;
+        final boolean codeBeforeAnchor;
+        final boolean alphanumeric;
+
+        Template(String id, String sender, int length, boolean codeBeforeAnchor, boolean alphanumeric) {
+            this.id = id;
+            this.sender = sender;
+            this.length = length;
+            this.codeBeforeAnchor = codeBeforeAnchor;
+            this.alphanumeric = alphanumeric;
+        }
+    }
+
+    /**
+     * Result of a successful template match
+     */
+    public static final class Match {
+        public final String templateId;
+        public final String otp;
+
+        Match(String templateId, String otp) {
+            this.templateId = templateId;
+            this.otp = otp;
+        }
+    }
+
+    public static final TemplateRegistry EMPTY = new TemplateRegistry(new Template[0], new int[0], new int[0], new int[0],
+            new int[1], new int[1], new int[] {-1}, new int[] {-1}, new char[0], 1);
+
+    private final Template[] templates;
+    // Per anchor: owning template index, anchor length and the next anchor with the same text, or -1
+    private final int[] anchorTemplate;
+    private final int[] anchorLength;
+    private final int[] anchorNext;
+    // DFA over compressed alphabet: transitions[state * alphabetSize + charClass]
+    private final int[] transitions;
+    private final int[] charClassAscii;
+    private final int[] stateAnchor;
+    private final int[] outputLink;
+    private final char[] extraChars;
+    private final int alphabetSize;
+    // Templates as registered from JS, kept for merging
+    private JSONArray source = new JSONArray();
+
+    private TemplateRegistry(Template[] templates, int[] anchorTemplate, int[] anchorLength, int[] anchorNext, int[] transitions,
+                             int[] charClassAscii, int[] stateAnchor, int[] outputLink, char[] extraChars, int alphabetSize) {
+        this.templates = templates;
+        this.anchorTemplate = anchorTemplate;
+        this.anchorLength = anchorLength;
+        this.anchorNext = anchorNext;
+        this.transitions = transitions;
+        this.charClassAscii = charClassAscii;
+        this.stateAnchor = stateAnchor;
+        this.outputLink = outputLink;
+        this.extraChars = extraChars;
+        this.alphabetSize = alphabetSize;
+    }
+
+    public int size() {
+        return templates.length;
+    }
+
+    /**
+     * Compile templates from the JS representation:
+     * [{ id, sender, anchors: ["your code is"], length, position: "after"|"before", alphanumeric }]
+     */
+    public static TemplateRegistry compile(JSONArray json) throws JSONException {
+        if (json == null || json.length() == 0) return EMPTY;
+
+        List<Template> templates = new ArrayList<Template>();
+        List<String> anchors = new ArrayList<String>();
+        List<Integer> owners = new ArrayList<Integer>();
+
+        for (int i = 0; i < json.length(); i++) {
+            JSONObject item = json.getJSONObject(i);
+            JSONArray itemAnchors = item.optJSONArray("anchors");
+            if (itemAnchors == null || itemAnchors.length() == 0) {
+                throw new JSONException("Template " + i + " has no anchors");
+            }
+            Template template = new Template(
+                item.optString("id", String.valueOf(i)),
+                item.isNull("sender") ? null : item.optString("sender", null),
+                item.optInt("length", OTPExtractor.ANY_LENGTH),
+                "before".equals(item.optString("position", "after")),
+                item.optBoolean("alphanumeric", false));
+            templates.add(template);
+
+            for (int a = 0; a < itemAnchors.length(); a++) {
+                String anchor = itemAnchors.getString(a).trim().toLowerCase(Locale.ROOT);
+                if (anchor.isEmpty()) continue;
+                anchors.add(anchor);
+                owners.add(templates.size() - 1);
+            }
+        }
+
+        TemplateRegistry registry = build(templates.toArray(new Template[0]), anchors, owners);
+        registry.source = json;
+        return registry;
+    }
+
+    /**
+     * Registry with more templates added, as compiled by compile
+     * A template replaces a registered one with the same id, or the same definition if it has no id
+     */
+    public TemplateRegistry merge(JSONArray json) throws JSONException {
+        if (json == null || json.length() == 0) return this;
+
+        Set<String> keys = new HashSet<String>();
+        for (int i = 0; i < json.length(); i++) {
+            keys.add(key(json.getJSONObject(i)));
+        }
+        JSONArray merged = new JSONArray();
+        for (int i = 0; i < source.length(); i++) {
+            JSONObject item = source.getJSONObject(i);
+            if (!keys.contains(key(item))) merged.put(item);
+        }
+        for (int i = 0; i < json.length(); i++) {
+            merged.put(json.getJSONObject(i));
+        }
+        return compile(merged);
+    }
+
+    private static String key(JSONObject item) {
+        return item.has("id") ? "id:" + item.optString("id") : item.toString();
+    }
+
+    private static TemplateRegistry build(Template[] templates, List<String> anchors, List<Integer> owners) {
+        // Compress the alphabet to the characters that actually occur in anchors
+        int[] charClassAscii = new int[128];
+        StringBuilder extra = new StringBuilder();
+        int alphabetSize = 1;
+        for (String anchor : anchors) {
+            for (int i = 0; i < anchor.length(); i++) {
+                char c = anchor.charAt(i);
+                if (c < 128) {
+                    if (charClassAscii[c] == 0) charClassAscii[c] = alphabetSize++;
+                } else if (extra.indexOf(String.valueOf(c)) < 0) {
+                    extra.append(c);
+                }
+            }
+        }
+        char[] extraChars = extra.toString().toCharArray();
+        Arrays.sort(extraChars);
+        int extraBase = alphabetSize;
+        alphabetSize += extraChars.length;
+
+        // Build the trie
+        int maxStates = 1;
+        for (String anchor : anchors) maxStates += anchor.length();
+        int[] transitions = new int[maxStates * alphabetSize];
+        Arrays.fill(transitions, -1);
+        int[] stateAnchor = new int[maxStates];
+        Arrays.fill(stateAnchor, -1);
+        int states = 1;
+
+        int[] anchorTemplate = new int[anchors.size()];
+        int[] anchorLength = new int[anchors.size()];
+        int[] anchorNext = new int[anchors.size()];
+        Arrays.fill(anchorNext, -1);
+        for (int a = 0; a < anchors.size(); a++) {
+            String anchor = anchors.get(a);
+            anchorTemplate[a] = owners.get(a);
+            anchorLength[a] = anchor.length();
+            int state = 0;
+            for (int i = 0; i < anchor.length(); i++) {
+                char c = anchor.charAt(i);
+                int cls = c < 128 ? charClassAscii[c] : extraBase + Arrays.binarySearch(extraChars, c);
+                int index = state * alphabetSize + cls;
+                if (transitions[index] < 0) transitions[index] = states++;
+                state = transitions[index];
+            }
+            // Templates sharing an anchor are chained, so each is tried in registration order
+            if (stateAnchor[state] < 0) {
+                stateAnchor[state] = a;
+            } else {
+                int last = stateAnchor[state];
+                while (anchorNext[last] >= 0) last = anchorNext[last];
+                anchorNext[last] = a;
+            }
+        }
+
+        // Breadth-first failure links, folded directly into a full DFA
+        int[] failure = new int[states];
+        int[] outputLink = new int[states];
+        Arrays.fill(outputLink, -1);
+        int[] queue = new int[states];
+        int head = 0;
+        int tail = 0;
+        for (int cls = 0; cls < alphabetSize; cls++) {
+            int next = transitions[cls];
+            if (next < 0) {
+                transitions[cls] = 0;
+            } else {
+                failure[next] = 0;
+                queue[tail++] = next;
+            }
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            int fail = failure[state];
+            outputLink[state] = stateAnchor[fail] >= 0 ? fail : outputLink[fail];
+            for (int cls = 0; cls < alphabetSize; cls++) {
+                int index = state * alphabetSize + cls;
+                int next = transitions[index];
+                if (next < 0) {
+                    transitions[index] = transitions[fail * alphabetSize + cls];
+                } else {
+                    failure[next] = transitions[fail * alphabetSize + cls];
+                    queue[tail++] = next;
+                }
+            }
+        }
+
+        return new TemplateRegistry(templates, anchorTemplate, anchorLength, anchorNext,
+                Arrays.copyOf(transitions, states * alphabetSize), charClassAscii,
+                Arrays.copyOf(stateAnchor, states), Arrays.copyOf(outputLink, states), extraChars, alphabetSize);
+    }
+
+    /**
+     * Match a message against all registered templates in one pass
+     * A template with a sender only applies while a session listens with that sender filter
+     * @param message SMS message text
+     * @param senderFilters Sender filters of the active sessions (null entries for sessions without one)
+     * @return First template match, or null if no applicable template produced a code
+     */
+    public Match match(CharSequence message, Collection<String> senderFilters) {
+        if (message == null || templates.length == 0) return null;
+
+        boolean[] applies = new boolean[templates.length];
+        boolean any = false;
+        for (int t = 0; t < templates.length; t++) {
+            applies[t] = templates[t].sender == null || containsIgnoreCase(senderFilters, templates[t].sender);
+            any |= applies[t];
+        }
+        if (!any) return null;
+
+        int state = 0;
+        final int n = message.length();
+        for (int i = 0; i < n; i++) {
+            state = transitions[state * alphabetSize + charClass(Character.toLowerCase(message.charAt(i)))];
+            for (int out = stateAnchor[state] >= 0 ? state : outputLink[state]; out >= 0; out = outputLink[out]) {
+                for (int anchor = stateAnchor[out]; anchor >= 0; anchor = anchorNext[anchor]) {
+                    if (!applies[anchorTemplate[anchor]]) continue;
+                    Template template = templates[anchorTemplate[anchor]];
+                    String otp = template.codeBeforeAnchor
+                            ? codeBefore(message, i + 1 - anchorLength[anchor], template)
+                            : codeAfter(message, i + 1, template);
+                    if (otp != null) return new Match(template.id, otp);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean containsIgnoreCase(Collection<String> values, String value) {
+        if (values == null) return false;
+        for (String candidate : values) {
+            if (value.equalsIgnoreCase(candidate)) return true;
+        }
+        return false;
+    }
+
+    private int charClass(char c) {
+        if (c < 128) return charClassAscii[c];
+        int index = Arrays.binarySearch(extraChars, c);
+        return index < 0 ? 0 : alphabetSize - extraChars.length + index;
+    }
+
+    private static String codeAfter(CharSequence message, int from, Template template) {
+        int limit = Math.min(message.length(), from + CODE_WINDOW);
+        int start = from;
+        while (start < limit && !isCodeChar(message.charAt(start), template)) start++;
+        if (start >= limit) return null;
+        int end = start;
+        while (end < message.length() && isCodeChar(message.charAt(end), template)) end++;
+
+        // Equal-sized groups joined by one space or hyphen, e.g. "123 456"
+        int grouped = end;
+        int groupLength = end - start;
+        while (groupLength >= MIN_GROUP && groupLength <= MAX_GROUP && grouped + 1 < message.length()
+                && isGroupSeparator(message.charAt(grouped)) && isCodeChar(message.charAt(grouped + 1), template)) {
+            int next = grouped + 1;
+            while (next < message.length() && isCodeChar(message.charAt(next), template)) next++;
+            if (next - grouped - 1 != groupLength) break;
+            grouped = next;
+        }
+        String otp = grouped > end ? accept(message, start, grouped, template) : null;
+        return otp != null ? otp : accept(message, start, end, template);
+    }
+
+    private static String codeBefore(CharSequence message, int anchorStart, Template template) {
+        int limit = Math.max(0, anchorStart - CODE_WINDOW);
+        int end = anchorStart;
+        while (end > limit && !isCodeChar(message.charAt(end - 1), template)) end--;
+        if (end <= limit) return null;
+        int start = end;
+        while (start > 0 && isCodeChar(message.charAt(start - 1), template)) start--;
+
+        // Equal-sized groups joined by one space or hyphen, e.g. "123-456"
+        int grouped = start;
+        int groupLength = end - start;
+        while (groupLength >= MIN_GROUP && groupLength <= MAX_GROUP && grouped >= 2
+                && isGroupSeparator(message.charAt(grouped - 1)) && isCodeChar(message.charAt(grouped - 2), template)) {
+            int previous = grouped - 1;
+            while (previous > 0 && isCodeChar(message.charAt(previous - 1), template)) previous--;
+            if (grouped - 1 - previous != groupLength) break;
+            grouped = previous;
+        }
+        String otp = grouped < start ? accept(message, grouped, end, template) : null;
+        return otp != null ? otp : accept(message, start, end, template);
+    }
+
+    /**
+     * The code between start and end, without group separators, if it has the template's length and format
+     */
+    private static String accept(CharSequence message, int start, int end, Template template) {
+        StringBuilder code = new StringBuilder(end - start);
+        boolean hasDigit = false;
+        for (int i = start; i < end; i++) {
+            char c = message.charAt(i);
+            if (isGroupSeparator(c)) continue;
+            if (c >= '0' && c <= '9') hasDigit = true;
+            code.append(c);
+        }
+        int length = code.length();
+        boolean lengthOk = template.length > 0
+                ? length == template.length
+                : length >= DEFAULT_MIN_LENGTH && length <= DEFAULT_MAX_LENGTH;
+        if (!lengthOk) return null;
+        if (template.alphanumeric && !hasDigit) return null;
+        return code.toString();
+    }
+
+    private static boolean isGroupSeparator(char c) {
+        return c == ' ' || c == '-';
+    }
+
+    private static boolean isCodeChar(char c, Template template) {
+        if (c >= '0' && c <= '9') return true;
+        return template.alphanumeric && c >= 'A' && c <= 'Z';
+    }
+}
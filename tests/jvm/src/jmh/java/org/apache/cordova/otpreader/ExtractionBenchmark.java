@@ -0,0 +1,99 @@
+package org.apache.cordova.otpreader;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * OTP extraction over the corpus, one message per invocation
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ExtractionBenchmark {
+
+    /** OTP length the JS layer assumed when none was given */
+    private static final int REGEX_BASELINE_LENGTH = 6;
+    private static final List<String> ANY_SENDER = Collections.singletonList(null);
+
+    private String[] messages;
+    private TemplateRegistry templates;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        List<Corpus.Message> corpus = Corpus.load();
+        messages = new String[corpus.size()];
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = corpus.get(i).text;
+        }
+
+        // A realistic registry: a few dozen sender templates, most of which don't match a given message
+        JSONArray json = new JSONArray();
+        String[] anchors = {"your code is", "is your otp", "otp is", "verification code is", "code:", "passcode is",
+                "tan lautet", "código de verificação é", "votre code de vérification est", "验证码"};
+        for (int i = 0; i < 40; i++) {
+            json.put(new JSONObject()
+                    .put("id", "t" + i)
+                    .put("anchors", new JSONArray().put(anchors[i % anchors.length] + (i < anchors.length ? "" : " " + i)))
+                    .put("position", anchors[i % anchors.length].startsWith("is ") ? "before" : "after"));
+        }
+        templates = TemplateRegistry.compile(json);
+    }
+
+    private String nextMessage() {
+        String message = messages[next];
+        next = next + 1 == messages.length ? 0 : next + 1;
+        return message;
+    }
+
+    @Benchmark
+    public String extract() {
+        return OTPExtractor.extract(nextMessage(), OTPExtractor.ANY_LENGTH);
+    }
+
+    @Benchmark
+    public String extractCandidatesJson() {
+        return OTPExtractor.toJson(OTPExtractor.candidates(nextMessage(), OTPExtractor.ANY_LENGTH));
+    }
+
+    @Benchmark
+    public TemplateRegistry.Match templateMatch() {
+        return templates.match(nextMessage(), ANY_SENDER);
+    }
+
+    /**
+     * Port of extractOTP in the JS layer before native extraction: four patterns,
+     * built on every call and tried in order until one matches
+     */
+    @Benchmark
+    public String regexBaseline() {
+        String message = nextMessage();
+        int length = REGEX_BASELINE_LENGTH;
+        Pattern[] patterns = {
+            Pattern.compile("\\b\\d{" + length + "}\\b"),
+            Pattern.compile("(?:otp|code|verification|pin)\\s*:?\\s*(\\d{" + length + "})", Pattern.CASE_INSENSITIVE),
+            Pattern.compile("\\b(\\d{" + length + "})\\b"),
+            Pattern.compile("(\\d{" + length + "})")
+        };
+        for (Pattern pattern : patterns) {
+            Matcher matcher = pattern.matcher(message);
+            if (matcher.find()) {
+                return matcher.groupCount() > 0 && matcher.group(1) != null ? matcher.group(1) : matcher.group();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,92 @@
+package org.apache.cordova.otpreader;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the keep-callback results sent for a received OTP and for a timeout:
+ * the JSONObject construction of handleSMSConsentResult and handleSMSTimeout
+ * against the ResultWriter encoding that replaced it, for the same payloads
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ResultBuildingBenchmark {
+
+    private static final String TIMEOUT_FIELDS = ResultWriter.begin()
+            .put("event", "timeout")
+            .put("success", false)
+            .put("timeout", true)
+            .put("message", "SMS listening timeout occurred")
+            .fields();
+
+    private String message;
+    private String otp;
+    private List<OTPExtractor.Candidate> candidateList;
+    private String candidates;
+
+    @Setup
+    public void setUp() throws Exception {
+        List<Corpus.Message> corpus = Corpus.load(1);
+        message = corpus.get(0).text;
+        otp = corpus.get(0).otp;
+        candidateList = OTPExtractor.candidates(message, OTPExtractor.ANY_LENGTH);
+        candidates = OTPExtractor.toJson(candidateList);
+    }
+
+    @Benchmark
+    public String otpResultJsonObject() {
+        JSONObject result = new JSONObject();
+        result.put("sessionId", "otp-1");
+        result.put("event", "otp");
+        result.put("message", message);
+        result.put("otp", otp);
+        result.put("confidence", 0.95);
+        JSONArray candidateArray = new JSONArray();
+        for (OTPExtractor.Candidate candidate : candidateList) {
+            candidateArray.put(new JSONObject().put("otp", candidate.code).put("confidence", candidate.confidence));
+        }
+        result.put("candidates", candidateArray);
+        result.put("success", true);
+        return result.toString();
+    }
+
+    @Benchmark
+    public String otpResultWriter() {
+        String fields = ResultWriter.begin()
+                .put("event", "otp")
+                .put("message", message)
+                .put("otp", otp)
+                .put("confidence", 0.95)
+                .putRaw("candidates", candidates)
+                .put("success", true)
+                .fields();
+        return ResultWriter.begin().put("sessionId", "otp-1").putFields(fields).toJson();
+    }
+
+    @Benchmark
+    public String timeoutResultJsonObject() {
+        JSONObject result = new JSONObject();
+        result.put("sessionId", "otp-1");
+        result.put("event", "timeout");
+        result.put("success", false);
+        result.put("timeout", true);
+        result.put("message", "SMS listening timeout occurred");
+        return result.toString();
+    }
+
+    @Benchmark
+    public String timeoutResultWriter() {
+        return ResultWriter.begin().put("sessionId", "otp-1").putFields(TIMEOUT_FIELDS).toJson();
+    }
+}
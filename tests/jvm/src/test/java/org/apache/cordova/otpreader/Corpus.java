@@ -0,0 +1,143 @@
+package org.apache.cordova.otpreader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Corpus of realistic OTP SMS messages across locales
+ * Each seed template in corpus/otp-sms.txt is expanded with random codes in the template's
+ * digit script and format, with a fixed random seed so every run sees the same messages
+ */
+final class Corpus {
+
+    static final int DEFAULT_SIZE = 4000;
+
+    private static final String SEED_FILE = "/corpus/otp-sms.txt";
+    private static final long RANDOM_SEED = 20240512L;
+    private static final String LETTERS = "ABCDEFGHJKLMNPQRSTUVWXYZ";
+
+    /**
+     * One corpus message and the code it carries
+     */
+    static final class Message {
+        final String locale;
+        final String text;
+        /** Expected OTP, with ASCII digits and without group separators */
+        final String otp;
+
+        Message(String locale, String text, String otp) {
+            this.locale = locale;
+            this.text = text;
+            this.otp = otp;
+        }
+
+        @Override
+        public String toString() {
+            return locale + ": " + text + " -> " + otp;
+        }
+    }
+
+    private static final class Seed {
+        final String locale;
+        final String script;
+        final String format;
+        final String template;
+
+        Seed(String locale, String script, String format, String template) {
+            this.locale = locale;
+            this.script = script;
+            this.format = format;
+            this.template = template;
+        }
+    }
+
+    private Corpus() {
+    }
+
+    static List<Message> load() throws IOException {
+        return load(DEFAULT_SIZE);
+    }
+
+    /**
+     * Expand the seed templates round-robin into the given number of messages
+     */
+    static List<Message> load(int size) throws IOException {
+        List<Seed> seeds = seeds();
+        Random random = new Random(RANDOM_SEED);
+        List<Message> messages = new ArrayList<Message>(size);
+        for (int i = 0; i < size; i++) {
+            Seed seed = seeds.get(i % seeds.size());
+            String otp = code(seed.format, random);
+            String rendered = render(group(otp, seed.format), seed.script);
+            messages.add(new Message(seed.locale, seed.template.replace("{code}", rendered), otp));
+        }
+        return Collections.unmodifiableList(messages);
+    }
+
+    private static List<Seed> seeds() throws IOException {
+        InputStream in = Corpus.class.getResourceAsStream(SEED_FILE);
+        if (in == null) throw new IOException("Missing corpus seed file " + SEED_FILE);
+
+        List<Seed> seeds = new ArrayList<Seed>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] parts = line.split("\\|", 4);
+                if (parts.length != 4) throw new IOException("Malformed corpus line: " + line);
+                seeds.add(new Seed(parts[0], parts[1], parts[2], parts[3]));
+            }
+        } finally {
+            reader.close();
+        }
+        return seeds;
+    }
+
+    private static String code(String format, Random random) {
+        boolean alphanumeric = format.startsWith("A");
+        int length = Integer.parseInt(format.replaceAll("[^0-9]", ""));
+        StringBuilder code = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            code.append(alphanumeric && i % 2 == 0
+                    ? LETTERS.charAt(random.nextInt(LETTERS.length()))
+                    : (char) ('0' + random.nextInt(10)));
+        }
+        return code.toString();
+    }
+
+    /**
+     * Split a code into groups: "6s" gives "123 456", "6h" gives "123-456", "8s" gives "1234 5678"
+     */
+    private static String group(String code, String format) {
+        char last = format.charAt(format.length() - 1);
+        if (last != 's' && last != 'h') return code;
+        int half = code.length() / 2;
+        return code.substring(0, half) + (last == 's' ? ' ' : '-') + code.substring(half);
+    }
+
+    private static String render(String code, String script) {
+        char zero;
+        if ("latin".equals(script)) return code;
+        else if ("devanagari".equals(script)) zero = '०';
+        else if ("bengali".equals(script)) zero = '০';
+        else if ("arabic".equals(script)) zero = '٠';
+        else if ("persian".equals(script)) zero = '۰';
+        else if ("fullwidth".equals(script)) zero = '０';
+        else throw new IllegalArgumentException("Unknown digit script " + script);
+
+        StringBuilder rendered = new StringBuilder(code.length());
+        for (int i = 0; i < code.length(); i++) {
+            char c = code.charAt(i);
+            rendered.append(c >= '0' && c <= '9' ? (char) (zero + (c - '0')) : c);
+        }
+        return rendered.toString();
+    }
+}
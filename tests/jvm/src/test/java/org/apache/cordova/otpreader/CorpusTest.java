@@ -0,0 +1,42 @@
+package org.apache.cordova.otpreader;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CorpusTest {
+
+    @Test
+    public void corpusHasThousandsOfMessagesAcrossLocales() throws IOException {
+        List<Corpus.Message> messages = Corpus.load();
+        Map<String, Integer> locales = new TreeMap<String, Integer>();
+        for (Corpus.Message message : messages) {
+            Integer count = locales.get(message.locale);
+            locales.put(message.locale, count == null ? 1 : count + 1);
+        }
+
+        assertEquals(Corpus.DEFAULT_SIZE, messages.size());
+        assertTrue("locales: " + locales.keySet(), locales.size() >= 30);
+    }
+
+    @Test
+    public void extractorFindsTheCodeInEveryCorpusMessage() throws IOException {
+        List<Corpus.Message> messages = Corpus.load();
+        StringBuilder misses = new StringBuilder();
+        int missed = 0;
+        for (Corpus.Message message : messages) {
+            String otp = OTPExtractor.extract(message.text, OTPExtractor.ANY_LENGTH);
+            if (!message.otp.equals(otp)) {
+                missed++;
+                if (missed <= 20) misses.append('\n').append(message).append(", got ").append(otp);
+            }
+        }
+        assertEquals("Missed codes:" + misses, 0, missed);
+    }
+}
@@ -0,0 +1,58 @@
+package org.apache.cordova.otpreader;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DedupCacheTest {
+
+    private static final long WINDOW = 1000;
+
+    @Test
+    public void suppressesRepeatsWithinTheWindow() {
+        DedupCache cache = new DedupCache(4, WINDOW);
+        long key = DedupCache.hash("Your code is 123456");
+
+        assertFalse(cache.isDuplicate(key, 0));
+        assertTrue(cache.isDuplicate(key, WINDOW));
+        assertFalse(cache.isDuplicate(key, WINDOW + 1));
+        assertTrue(cache.isDuplicate(key, WINDOW + 2));
+        assertEquals(2, cache.suppressedCount());
+    }
+
+    @Test
+    public void hashesDistinctMessagesApart() {
+        assertNotEquals(DedupCache.hash("Your code is 123456"), DedupCache.hash("Your code is 123457"));
+        assertEquals(DedupCache.hash("Your code is 123456"), DedupCache.hash("Your code is 123456"));
+    }
+
+    @Test
+    public void evictsLeastRecentlySeenKeyOnceFull() {
+        DedupCache cache = new DedupCache(2, WINDOW);
+
+        cache.isDuplicate(1, 0);
+        cache.isDuplicate(2, 0);
+        assertTrue(cache.isDuplicate(1, 0));
+        cache.isDuplicate(3, 0);
+
+        assertTrue(cache.isDuplicate(1, 0));
+        assertFalse(cache.isDuplicate(2, 0));
+    }
+
+    @Test
+    public void evictsExpiredKeysFirst() {
+        DedupCache cache = new DedupCache(2, WINDOW);
+
+        cache.isDuplicate(1, 0);
+        cache.isDuplicate(2, WINDOW);
+        // 1 is now the most recently seen key, but its window ends first
+        assertTrue(cache.isDuplicate(1, WINDOW));
+        cache.isDuplicate(3, WINDOW + 1);
+
+        assertTrue(cache.isDuplicate(2, WINDOW + 1));
+        assertTrue(cache.isDuplicate(3, WINDOW + 1));
+    }
+}
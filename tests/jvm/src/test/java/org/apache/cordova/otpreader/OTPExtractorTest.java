@@ -0,0 +1,84 @@
+package org.apache.cordova.otpreader;
+
+import org.json.JSONArray;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class OTPExtractorTest {
+
+    private static String extract(String message) {
+        return OTPExtractor.extract(message, OTPExtractor.ANY_LENGTH);
+    }
+
+    @Test
+    public void extractsCodeNextToKeyword() {
+        assertEquals("123456", extract("Your verification code is 123456"));
+        assertEquals("654321", extract("OTP: 654321"));
+        assertEquals("234567", extract("234567 is your login code"));
+    }
+
+    @Test
+    public void honoursExpectedLength() {
+        assertEquals("4821", OTPExtractor.extract("Use 4821 to sign in, ref 991234", 4));
+        assertNull(OTPExtractor.extract("Your code is 12345", 6));
+    }
+
+    @Test
+    public void normalizesUnicodeDigits() {
+        assertEquals("123456", extract("आपका OTP १२३४५६ है"));
+        assertEquals("4821", extract("رمز التحقق ٤٨٢١"));
+        assertEquals("987654", extract("验证码９８７６５４，5分钟内有效"));
+    }
+
+    @Test
+    public void joinsGroupedCodes() {
+        assertEquals("123456", extract("Your code is 123 456"));
+        assertEquals("123456", extract("Your code is 123-456"));
+    }
+
+    @Test
+    public void ranksGroupedCodeAboveItsGroups() {
+        assertEquals("49857829", extract("Your HSBC security code is 4985 7829"));
+        assertEquals("4985", OTPExtractor.extract("Your HSBC security code is 4985 7829", 4));
+    }
+
+    @Test
+    public void prefersCodeOverAmountsDatesAndMaskedNumbers() {
+        assertEquals("482913", extract("Rs 2,450.00 debited from A/c XX1234 on 12/05/2024. OTP 482913"));
+        assertEquals("771204", extract("Txn ID 998877 for INR 5000. Your OTP is 771204"));
+        assertEquals("550021", extract("Payment of $1500 to card **4412: code 550021"));
+    }
+
+    @Test
+    public void acceptsUpperCaseAlphanumericCodes() {
+        assertEquals("A7K9QZ", extract("Your Steam Guard code is A7K9QZ"));
+        assertNull(extract("Hello there, see you tomorrow"));
+    }
+
+    @Test
+    public void ranksCandidatesBestFirst() {
+        List<OTPExtractor.Candidate> candidates = OTPExtractor.candidates(
+                "Order 40112 shipped. Your OTP is 883311", OTPExtractor.ANY_LENGTH);
+
+        assertEquals("883311", candidates.get(0).code);
+        assertEquals(2, candidates.size());
+        assertTrue(candidates.get(0).confidence > candidates.get(1).confidence);
+        assertTrue(candidates.get(0).confidence <= 1.0);
+    }
+
+    @Test
+    public void encodesCandidatesAsJson() {
+        List<OTPExtractor.Candidate> candidates = OTPExtractor.candidates("Your code is 123456", OTPExtractor.ANY_LENGTH);
+        JSONArray json = new JSONArray(OTPExtractor.toJson(candidates));
+
+        assertEquals(candidates.size(), json.length());
+        assertEquals("123456", json.getJSONObject(0).getString("otp"));
+        assertEquals(candidates.get(0).confidence, json.getJSONObject(0).getDouble("confidence"), 0);
+        assertEquals("[]", OTPExtractor.toJson(OTPExtractor.candidates(null, OTPExtractor.ANY_LENGTH)));
+    }
+}
@@ -0,0 +1,29 @@
+package org.apache.cordova.otpreader;
+
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+
+public class OTPLogTest {
+
+    @Test
+    public void parsesLevelNamesInAnyCase() {
+        assertEquals(OTPLog.DEBUG, OTPLog.parseLevel(" debug ", -1));
+        assertEquals(OTPLog.NONE, OTPLog.parseLevel("off", -1));
+        assertEquals(-1, OTPLog.parseLevel("loud", -1));
+    }
+
+    @Test
+    public void parsesLevelNamesIndependentOfDefaultLocale() {
+        Locale defaultLocale = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            assertEquals(OTPLog.INFO, OTPLog.parseLevel("info", -1));
+            assertEquals(OTPLog.VERBOSE, OTPLog.parseLevel("verbose", -1));
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+}
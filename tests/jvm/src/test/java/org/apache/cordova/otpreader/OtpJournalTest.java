@@ -0,0 +1,133 @@
+package org.apache.cordova.otpreader;
+
+import org.json.JSONArray;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OtpJournalTest {
+
+    private static final long TTL = 60 * 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        OTPLog.setLevel(OTPLog.NONE);
+        file = new File(folder.getRoot(), "otpreader.journal");
+    }
+
+    private static String fields(String otp) {
+        return ResultWriter.begin().put("event", "otp").put("otp", otp).fields();
+    }
+
+    @Test
+    public void drainsPendingEventsOnce() throws Exception {
+        OtpJournal journal = new OtpJournal(file, TTL);
+        journal.append(fields("111111"));
+        journal.append(fields("222222"));
+
+        JSONArray events = journal.drain(false);
+        assertEquals(2, events.length());
+        assertEquals("111111", events.getJSONObject(0).getString("otp"));
+        assertFalse(events.getJSONObject(0).getBoolean("delivered"));
+        assertEquals(0, journal.drain(true).length());
+        assertEquals(0, journal.size());
+    }
+
+    @Test
+    public void skipsDeliveredEventsUnlessAsked() throws Exception {
+        OtpJournal journal = new OtpJournal(file, TTL);
+        journal.markDelivered(journal.append(fields("111111")));
+        journal.append(fields("222222"));
+
+        assertEquals(1, journal.drain(false).length());
+
+        JSONArray events = journal.drain(true);
+        assertEquals(1, events.length());
+        assertEquals("111111", events.getJSONObject(0).getString("otp"));
+        assertTrue(events.getJSONObject(0).getBoolean("delivered"));
+    }
+
+    @Test
+    public void survivesReopening() throws Exception {
+        new OtpJournal(file, TTL).append(fields("444444"));
+
+        JSONArray events = new OtpJournal(file, TTL).drain(false);
+        assertEquals(1, events.length());
+        assertEquals("444444", events.getJSONObject(0).getString("otp"));
+    }
+
+    @Test
+    public void dropsExpiredEvents() throws Exception {
+        OtpJournal journal = new OtpJournal(file, -1);
+        journal.append(fields("555555"));
+
+        assertEquals(0, journal.drain(false).length());
+    }
+
+    @Test
+    public void evictsOldestEventsWhenFull() throws Exception {
+        OtpJournal journal = new OtpJournal(file, TTL);
+        StringBuilder padding = new StringBuilder();
+        for (int i = 0; i < 1000; i++) padding.append('x');
+        for (int i = 0; i < 100; i++) {
+            journal.append(ResultWriter.begin().put("otp", String.valueOf(i)).put("message", padding.toString()).fields());
+        }
+
+        JSONArray events = journal.drain(false);
+        assertTrue(events.length() < 100);
+        assertEquals("99", events.getJSONObject(events.length() - 1).getString("otp"));
+    }
+
+    @Test
+    public void resetsUnreadableFile() throws Exception {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.write("not a journal".getBytes("UTF-8"));
+        raf.close();
+
+        OtpJournal journal = new OtpJournal(file, TTL);
+        assertEquals(0, journal.drain(false).length());
+        journal.append(fields("666666"));
+        assertEquals(1, journal.drain(false).length());
+    }
+
+    @Test
+    public void wipesExpiredEventsWhenOpened() throws Exception {
+        new OtpJournal(file, TTL).append(fields("777777"));
+
+        new OtpJournal(file, -1).open();
+        assertFalse(new String(Files.readAllBytes(file.toPath()), "UTF-8").contains("777777"));
+    }
+
+    @Test
+    public void resetsJournalWithCorruptEntries() throws Exception {
+        OtpJournal journal = new OtpJournal(file, TTL);
+        journal.append(fields("888888"));
+        journal.append(fields("999999"));
+
+        // First entry length, as left by a crash mid-compaction
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek(16);
+        raf.writeInt(3);
+        raf.close();
+
+        OtpJournal reopened = new OtpJournal(file, TTL);
+        assertEquals(0, reopened.drain(true).length());
+        reopened.append(fields("123123"));
+        assertEquals(1, reopened.size());
+        assertEquals("123123", reopened.drain(false).getJSONObject(0).getString("otp"));
+    }
+}
@@ -0,0 +1,53 @@
+package org.apache.cordova.otpreader;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ResultWriterTest {
+
+    @Test
+    public void writesValidJson() {
+        JSONObject json = new JSONObject(ResultWriter.begin()
+                .put("event", "otp")
+                .put("success", true)
+                .put("count", 3L)
+                .put("confidence", 0.75)
+                .put("missing", (String) null)
+                .putRaw("candidates", "[{\"otp\":\"1234\"}]")
+                .toJson());
+
+        assertEquals("otp", json.getString("event"));
+        assertTrue(json.getBoolean("success"));
+        assertEquals(3, json.getLong("count"));
+        assertEquals(0.75, json.getDouble("confidence"), 0);
+        assertTrue(json.isNull("missing"));
+        assertEquals("1234", json.getJSONArray("candidates").getJSONObject(0).getString("otp"));
+    }
+
+    @Test
+    public void escapesMessageText() {
+        String message = "Line \"one\"\nback\\slash\ttab\u0001 end";
+        JSONObject json = new JSONObject(ResultWriter.begin().put("message", message).toJson());
+
+        assertEquals(message, json.getString("message"));
+    }
+
+    @Test
+    public void writesMillisWithMicrosecondPrecision() {
+        assertEquals("{\"t\":12.034}", ResultWriter.begin().putMillis("t", 12034567L).toJson());
+        assertEquals("{\"t\":-0.005}", ResultWriter.begin().putMillis("t", -5000L).toJson());
+    }
+
+    @Test
+    public void reusesEncodedFields() {
+        String fields = ResultWriter.begin().put("event", "timeout").put("timeout", true).fields();
+        JSONObject json = new JSONObject(ResultWriter.begin().put("sessionId", "otp-1").putFields(fields).toJson());
+
+        assertEquals("otp-1", json.getString("sessionId"));
+        assertEquals("timeout", json.getString("event"));
+        assertEquals("{\"event\":\"timeout\",\"timeout\":true}", ResultWriter.begin().putFields(fields).toJson());
+    }
+}
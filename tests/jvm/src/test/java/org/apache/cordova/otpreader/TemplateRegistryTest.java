@@ -0,0 +1,110 @@
+package org.apache.cordova.otpreader;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TemplateRegistryTest {
+
+    private static final List<String> ANY_SENDER = Collections.singletonList(null);
+
+    private static TemplateRegistry compile(String json) {
+        return TemplateRegistry.compile(new JSONArray(json));
+    }
+
+    private static String otp(TemplateRegistry registry, String message, List<String> senders) {
+        TemplateRegistry.Match match = registry.match(message, senders);
+        return match != null ? match.otp : null;
+    }
+
+    @Test
+    public void extractsCodeAfterAnchor() {
+        TemplateRegistry registry = compile("[{id:'a', anchors:['your code is'], length:6}]");
+
+        TemplateRegistry.Match match = registry.match("Hello! YOUR CODE IS 482913.", ANY_SENDER);
+        assertEquals("a", match.templateId);
+        assertEquals("482913", match.otp);
+        assertNull(registry.match("Your code is 4829", ANY_SENDER));
+    }
+
+    @Test
+    public void extractsCodeBeforeAnchor() {
+        TemplateRegistry registry = compile("[{anchors:['is your otp'], position:'before'}]");
+
+        assertEquals("774411", otp(registry, "774411 is your OTP for login", ANY_SENDER));
+    }
+
+    @Test
+    public void joinsGroupedCodes() {
+        TemplateRegistry before = compile("[{anchors:['is your otp'], position:'before'}]");
+        TemplateRegistry after = compile("[{anchors:['your code is']}]");
+
+        assertEquals("123456", otp(before, "123-456 is your OTP", ANY_SENDER));
+        assertEquals("123456", otp(after, "Your code is 123 456", ANY_SENDER));
+        assertEquals("123456", otp(after, "Your code is 12 34 56 now", ANY_SENDER));
+        assertEquals("482193", otp(after, "Your code is 482193 10 min", ANY_SENDER));
+    }
+
+    @Test
+    public void acceptsAlphanumericCodesOnlyWithDigits() {
+        TemplateRegistry registry = compile("[{anchors:['login code'], alphanumeric:true}]");
+
+        assertEquals("AB12CD", otp(registry, "Your login code AB12CD", ANY_SENDER));
+        assertNull(registry.match("Your login code ABCDEF", ANY_SENDER));
+    }
+
+    @Test
+    public void appliesSenderTemplatesOnlyForMatchingSessions() {
+        TemplateRegistry registry = compile("[{id:'shop', sender:'SHOPIN', anchors:['login code'], alphanumeric:true},"
+                + "{id:'bank', anchors:['login code'], length:6}]");
+        String message = "Your login code 884422 for HDFC Bank";
+
+        assertEquals("bank", registry.match(message, Arrays.asList("+911234567890")).templateId);
+        assertEquals("bank", registry.match(message, ANY_SENDER).templateId);
+        assertEquals("shop", registry.match(message, Arrays.asList("shopin")).templateId);
+    }
+
+    @Test
+    public void compilesAnchorsIndependentOfDefaultLocale() {
+        Locale defaultLocale = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            TemplateRegistry registry = compile("[{anchors:['Your PIN is']}]");
+            assertEquals("4829", otp(registry, "Your PIN is 4829", ANY_SENDER));
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+
+    @Test
+    public void mergesTemplatesReplacingSameId() {
+        TemplateRegistry registry = compile("[{id:'bank', anchors:['bank code']}, {id:'shop', anchors:['shop code']}]")
+                .merge(new JSONArray("[{id:'shop', anchors:['store code']}, {id:'mail', anchors:['mail code']}]"));
+
+        assertEquals(3, registry.size());
+        assertEquals("4829", otp(registry, "Bank code 4829", ANY_SENDER));
+        assertEquals("4829", otp(registry, "Store code 4829", ANY_SENDER));
+        assertEquals("4829", otp(registry, "Mail code 4829", ANY_SENDER));
+        assertNull(otp(registry, "Shop code 4829", ANY_SENDER));
+        assertEquals(3, registry.merge(new JSONArray("[{id:'mail', anchors:['mail code']}]")).size());
+    }
+
+    @Test
+    public void matchesNothingWithoutTemplates() {
+        assertNull(TemplateRegistry.EMPTY.match("Your code is 123456", ANY_SENDER));
+        assertEquals(0, TemplateRegistry.compile(null).size());
+    }
+
+    @Test(expected = JSONException.class)
+    public void rejectsTemplatesWithoutAnchors() {
+        compile("[{id:'broken'}]");
+    }
+}
@@ -0,0 +1,143 @@
+package org.apache.cordova.otpreader;
+
+import android.content.Intent;
+import android.os.Handler;
+
+import com.google.android.gms.auth.api.phone.SmsRetriever;
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.CommonStatusCodes;
+import com.google.android.gms.common.api.Status;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scripted SmsRetrieverGateway for load tests
+ * Each start call takes the next scripted outcome: either the request starts and the matching
+ * SMS_RETRIEVED_ACTION broadcast is pushed through the plugin's receiver, or the start fails.
+ * Nothing reaches Play Services, so outcomes can be scripted as fast as the plugin handles them
+ */
+final class FakeSmsGateway implements SmsRetrieverGateway {
+
+    /** The request starts and an SMS arrives */
+    static final int OUTCOME_SMS = 0;
+    /** The request starts and times out */
+    static final int OUTCOME_TIMEOUT = 1;
+    /** The request fails to start */
+    static final int OUTCOME_FAILURE = 2;
+    /** The request starts and stays quiet, e.g. before a burst */
+    static final int OUTCOME_QUIET = 3;
+
+    private static final class Step {
+        final int outcome;
+        final String message;
+
+        Step(int outcome, String message) {
+            this.outcome = outcome;
+            this.message = message;
+        }
+    }
+
+    private final OTPReader reader;
+    private final Handler handler;
+    private final ConcurrentLinkedQueue<Step> script = new ConcurrentLinkedQueue<Step>();
+    private final AtomicInteger broadcasts = new AtomicInteger();
+    private volatile int availabilityStatus = ConnectionResult.SUCCESS;
+    private volatile long lastBroadcastAt;
+
+    /**
+     * @param reader Plugin whose receiver gets the scripted broadcasts
+     * @param handler Main-thread handler, where Play Services reports start results
+     */
+    FakeSmsGateway(OTPReader reader, Handler handler) {
+        this.reader = reader;
+        this.handler = handler;
+    }
+
+    /**
+     * Script the outcome of the next start call
+     * @param message SMS text for OUTCOME_SMS, ignored otherwise
+     */
+    void enqueue(int outcome, String message) {
+        script.add(new Step(outcome, message));
+    }
+
+    void setAvailabilityStatus(int status) {
+        availabilityStatus = status;
+    }
+
+    /**
+     * System.nanoTime() of the latest scripted broadcast
+     */
+    long lastBroadcastAt() {
+        return lastBroadcastAt;
+    }
+
+    int broadcastCount() {
+        return broadcasts.get();
+    }
+
+    @Override
+    public int availabilityStatus() {
+        return availabilityStatus;
+    }
+
+    @Override
+    public void startSmsUserConsent(String senderPhoneNumber, Listener listener) {
+        start(listener);
+    }
+
+    @Override
+    public void startSmsRetriever(Listener listener) {
+        start(listener);
+    }
+
+    private void start(final Listener listener) {
+        final Step step = script.poll();
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (step == null || step.outcome == OUTCOME_FAILURE) {
+                    listener.onFailure(new Exception(step == null ? "No scripted outcome" : "Scripted failure"));
+                    return;
+                }
+                listener.onStarted();
+                if (step.outcome != OUTCOME_QUIET) {
+                    broadcast(step.outcome, step.message);
+                }
+            }
+        });
+    }
+
+    /**
+     * Push SMS broadcasts through the receiver back to back, without waiting for any result
+     * Each one is posted to the main thread, where the system delivers broadcasts
+     * @param emittedAt Filled with the System.nanoTime() of each broadcast
+     */
+    void burst(final String[] messages, final long[] emittedAt) {
+        for (int i = 0; i < messages.length; i++) {
+            final int index = i;
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    emittedAt[index] = broadcast(OUTCOME_SMS, messages[index]);
+                }
+            });
+        }
+    }
+
+    private long broadcast(int outcome, String message) {
+        Intent intent = new Intent(SmsRetriever.SMS_RETRIEVED_ACTION);
+        if (outcome == OUTCOME_SMS) {
+            intent.putExtra(SmsRetriever.EXTRA_STATUS, new Status(CommonStatusCodes.SUCCESS));
+            intent.putExtra(SmsRetriever.EXTRA_SMS_MESSAGE, message);
+        } else {
+            intent.putExtra(SmsRetriever.EXTRA_STATUS, new Status(CommonStatusCodes.TIMEOUT));
+        }
+        broadcasts.incrementAndGet();
+        long at = System.nanoTime();
+        lastBroadcastAt = at;
+        reader.deliverBroadcast(intent);
+        return at;
+    }
+}
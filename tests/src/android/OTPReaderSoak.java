@@ -0,0 +1,330 @@
+package org.apache.cordova.otpreader;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaWebView;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OTPReader driven by FakeSmsGateway, with a soak action for load tests
+ * Runs startListening/stopListening cycles with scripted SMS, timeout and failure outcomes
+ * through the plugin's public actions, then optionally a burst of back-to-back broadcasts,
+ * and reports receiver leaks, callback-context leaks, heap growth and per-event latency
+ */
+public class OTPReaderSoak extends OTPReader {
+
+    private static final String TAG = "OTPReaderSoak";
+    private static final long EVENT_TIMEOUT_MS = 5000;
+    private static final int HEAP_SAMPLES = 10;
+    private static final int MAX_BURST = 999999;
+
+    private volatile FakeSmsGateway fakeGateway;
+
+    /**
+     * One result sent to a recorded callback, with the System.nanoTime() it arrived at
+     */
+    private static final class Result {
+        final PluginResult pluginResult;
+        final long at;
+
+        Result(PluginResult pluginResult, long at) {
+            this.pluginResult = pluginResult;
+            this.at = at;
+        }
+
+        boolean isError() {
+            return pluginResult.getStatus() == PluginResult.Status.ERROR.ordinal();
+        }
+
+        JSONObject json() {
+            try {
+                return new JSONObject(pluginResult.getStrMessage());
+            } catch (JSONException e) {
+                return new JSONObject();
+            }
+        }
+    }
+
+    /**
+     * Callback context that records results instead of sending them to the WebView
+     */
+    private static final class Recorder extends CallbackContext {
+        final BlockingQueue<Result> results = new LinkedBlockingQueue<Result>();
+
+        Recorder(String callbackId, CordovaWebView webView) {
+            super(callbackId, webView);
+        }
+
+        @Override
+        public void sendPluginResult(PluginResult pluginResult) {
+            results.add(new Result(pluginResult, System.nanoTime()));
+        }
+
+        /**
+         * Wait for an error, or for a success result carrying the given event
+         * @return The result, or null if none arrived in time
+         */
+        Result await(String event) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(EVENT_TIMEOUT_MS);
+            while (true) {
+                Result result = results.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (result == null || result.isError() || event == null || event.equals(result.json().optString("event"))) {
+                    return result;
+                }
+            }
+        }
+    }
+
+    /**
+     * Latencies of one event type, in nanoseconds
+     */
+    private static final class Latencies {
+        private long[] values = new long[256];
+        private int count;
+
+        void add(long nanos) {
+            if (count == values.length) values = Arrays.copyOf(values, count * 2);
+            values[count++] = nanos;
+        }
+
+        JSONObject toJson() throws JSONException {
+            long[] sorted = Arrays.copyOf(values, count);
+            Arrays.sort(sorted);
+            JSONObject json = new JSONObject();
+            json.put("count", count);
+            json.put("p50Ms", percentile(sorted, 50));
+            json.put("p95Ms", percentile(sorted, 95));
+            json.put("p99Ms", percentile(sorted, 99));
+            json.put("maxMs", count > 0 ? sorted[count - 1] / 1e6 : 0);
+            return json;
+        }
+
+        private static double percentile(long[] sorted, int percent) {
+            if (sorted.length == 0) return 0;
+            return sorted[Math.min(sorted.length - 1, (int) Math.ceil(percent / 100.0 * sorted.length) - 1)] / 1e6;
+        }
+    }
+
+    @Override
+    SmsRetrieverGateway createGateway() {
+        fakeGateway = new FakeSmsGateway(this, new Handler(Looper.getMainLooper()));
+        return fakeGateway;
+    }
+
+    /**
+     * The fake gateway never reads SMS, so no permission prompt interrupts a run
+     */
+    @Override
+    boolean hasRequiredPermissions() {
+        return true;
+    }
+
+    @Override
+    public boolean execute(String action, JSONArray args, final CallbackContext callbackContext) throws JSONException {
+        if ("soak".equals(action)) {
+            final JSONObject options = args.optJSONObject(0) != null ? args.optJSONObject(0) : new JSONObject();
+            cordova.getThreadPool().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        callbackContext.success(soak(options));
+                    } catch (Exception e) {
+                        OTPLog.e(TAG, "Soak run failed", e);
+                        callbackContext.error("Soak run failed: " + e.getMessage());
+                    }
+                }
+            });
+            return true;
+        }
+        return super.execute(action, args, callbackContext);
+    }
+
+    /**
+     * Run the scripted cycles one after another, then the burst
+     * Options: cycles (default 1000), timeoutShare (0.1), failureShare (0.05), seed (1),
+     * burst (broadcasts sent without waiting for results, default 0)
+     */
+    private JSONObject soak(JSONObject options) throws JSONException, InterruptedException {
+        int cycles = Math.max(options.optInt("cycles", 1000), 1);
+        double timeoutShare = options.optDouble("timeoutShare", 0.1);
+        double failureShare = options.optDouble("failureShare", 0.05);
+        Random random = new Random(options.optLong("seed", 1));
+
+        // Builds the fake gateway and the receiver before the first cycle
+        call("prewarm", new JSONArray(), null);
+
+        List<WeakReference<CallbackContext>> contexts = new ArrayList<WeakReference<CallbackContext>>(cycles);
+        Latencies otpLatency = new Latencies();
+        Latencies timeoutLatency = new Latencies();
+        Latencies failureLatency = new Latencies();
+        JSONArray heapSamples = new JSONArray();
+        int lost = 0;
+
+        long heapStart = usedHeapKb();
+        heapSamples.put(heapStart);
+        long started = System.nanoTime();
+        for (int i = 0; i < cycles; i++) {
+            double roll = random.nextDouble();
+            int outcome = roll < failureShare ? FakeSmsGateway.OUTCOME_FAILURE
+                    : roll < failureShare + timeoutShare ? FakeSmsGateway.OUTCOME_TIMEOUT
+                    : FakeSmsGateway.OUTCOME_SMS;
+            // Every message is distinct, so duplicate filtering never hides one
+            fakeGateway.enqueue(outcome, String.format("Your verification code is %06d. Ref %d", random.nextInt(1000000), i));
+
+            Recorder recorder = new Recorder("soak-" + i, webView);
+            contexts.add(new WeakReference<CallbackContext>(recorder));
+            JSONObject listenOptions = new JSONObject()
+                    .put("mode", outcome == FakeSmsGateway.OUTCOME_SMS ? "retriever" : "consent");
+            long startAt = System.nanoTime();
+            super.execute("startListening", new JSONArray().put(JSONObject.NULL).put(listenOptions), recorder);
+
+            Result result;
+            if (outcome == FakeSmsGateway.OUTCOME_FAILURE) {
+                result = recorder.await(null);
+                if (result != null && result.isError()) {
+                    failureLatency.add(result.at - startAt);
+                } else {
+                    lost++;
+                }
+                continue;
+            }
+
+            result = recorder.await(outcome == FakeSmsGateway.OUTCOME_SMS ? "otp" : "timeout");
+            if (result != null && !result.isError()) {
+                (outcome == FakeSmsGateway.OUTCOME_SMS ? otpLatency : timeoutLatency).add(result.at - fakeGateway.lastBroadcastAt());
+            } else {
+                lost++;
+            }
+            call("stopListening", new JSONArray().put(JSONObject.NULL), null);
+
+            if ((i + 1) % Math.max(cycles / HEAP_SAMPLES, 1) == 0) {
+                heapSamples.put(usedHeapKb());
+            }
+        }
+        long elapsedNanos = System.nanoTime() - started;
+
+        int burstSize = Math.min(Math.max(options.optInt("burst", 0), 0), MAX_BURST);
+        JSONObject burst = burstSize > 0 ? burst(burstSize, contexts) : null;
+
+        JSONObject debugInfo = new JSONObject(call("getDebugInfo", new JSONArray(), null).pluginResult.getStrMessage());
+        long heapEnd = usedHeapKb();
+        int contextsAlive = 0;
+        for (WeakReference<CallbackContext> context : contexts) {
+            if (context.get() != null) contextsAlive++;
+        }
+
+        JSONObject latency = new JSONObject();
+        latency.put("otp", otpLatency.toJson());
+        latency.put("timeout", timeoutLatency.toJson());
+        latency.put("failure", failureLatency.toJson());
+
+        JSONObject report = new JSONObject();
+        report.put("cycles", cycles);
+        report.put("broadcasts", fakeGateway.broadcastCount());
+        report.put("elapsedMs", elapsedNanos / 1e6);
+        report.put("cyclesPerSecond", cycles / (elapsedNanos / 1e9));
+        report.put("lostEvents", lost);
+        report.put("receiverRegistrations", debugInfo.optInt("receiverRegistrations"));
+        report.put("receiverUnregistrations", debugInfo.optInt("receiverUnregistrations"));
+        report.put("receiverLeaks", debugInfo.optInt("receiverRegistrations") - debugInfo.optInt("receiverUnregistrations"));
+        report.put("activeSessions", debugInfo.optJSONArray("activeSessions"));
+        report.put("scheduledTimers", debugInfo.optInt("scheduledTimers"));
+        report.put("callbackContextLeaks", contextsAlive);
+        report.put("heapStartKb", heapStart);
+        report.put("heapEndKb", heapEnd);
+        report.put("heapGrowthKb", heapEnd - heapStart);
+        report.put("heapSamplesKb", heapSamples);
+        report.put("latency", latency);
+        if (burst != null) {
+            report.put("burst", burst);
+        }
+        OTPLog.i(TAG, "Soak run finished: ", report);
+        return report;
+    }
+
+    /**
+     * Send broadcasts back to back to one retriever session, without waiting for each result
+     * Every message carries its index as the code, which ties each result to its broadcast
+     */
+    private JSONObject burst(int count, List<WeakReference<CallbackContext>> contexts) throws JSONException, InterruptedException {
+        fakeGateway.enqueue(FakeSmsGateway.OUTCOME_QUIET, null);
+        Recorder recorder = new Recorder("burst", webView);
+        contexts.add(new WeakReference<CallbackContext>(recorder));
+        super.execute("startListening", new JSONArray().put(JSONObject.NULL).put(new JSONObject().put("mode", "retriever")), recorder);
+        Result listening = recorder.await("listening");
+        if (listening == null || listening.isError()) {
+            throw new IllegalStateException("Burst session did not start");
+        }
+
+        String[] messages = new String[count];
+        for (int i = 0; i < count; i++) {
+            messages[i] = String.format("Your verification code is %06d", i);
+        }
+        long[] emittedAt = new long[count];
+        long started = System.nanoTime();
+        fakeGateway.burst(messages, emittedAt);
+
+        Latencies latency = new Latencies();
+        int delivered = 0;
+        long lastAt = started;
+        while (delivered < count) {
+            Result result = recorder.await("otp");
+            if (result == null || result.isError()) break;
+            int index = Integer.parseInt(result.json().optString("otp"));
+            latency.add(result.at - emittedAt[index]);
+            lastAt = result.at;
+            delivered++;
+        }
+        call("stopListening", new JSONArray().put(JSONObject.NULL), null);
+
+        long elapsedNanos = lastAt - started;
+        JSONObject report = new JSONObject();
+        report.put("broadcasts", count);
+        report.put("delivered", delivered);
+        report.put("lostEvents", count - delivered);
+        report.put("elapsedMs", elapsedNanos / 1e6);
+        report.put("deliveredPerSecond", elapsedNanos > 0 ? delivered / (elapsedNanos / 1e9) : 0);
+        report.put("latency", latency.toJson());
+        return report;
+    }
+
+    /**
+     * Run a plugin action with a recorded callback and wait for its first result
+     */
+    private Result call(String action, JSONArray args, String event) throws JSONException, InterruptedException {
+        Recorder recorder = new Recorder(action, webView);
+        super.execute(action, args, recorder);
+        Result result = recorder.await(event);
+        if (result == null) {
+            throw new IllegalStateException(action + " did not answer within " + EVENT_TIMEOUT_MS + " ms");
+        }
+        return result;
+    }
+
+    /**
+     * Heap in use after a full collection, which also clears unreachable callback contexts
+     */
+    private static long usedHeapKb() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            runtime.gc();
+            runtime.runFinalization();
+            Thread.sleep(50);
+        }
+        return (runtime.totalMemory() - runtime.freeMemory()) / 1024;
+    }
+}
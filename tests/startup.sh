@@ -0,0 +1,25 @@
+#!/bin/sh
+# Cold-start time of an installed app, as reported by `am start -W`
+# Usage: tests/startup.sh <package> [activity] [runs]
+# Run it once with the plugin installed and once without, on the same device, and compare the medians
+
+set -e
+
+PACKAGE=${1:?usage: $0 <package> [activity] [runs]}
+ACTIVITY=${2:-.MainActivity}
+RUNS=${3:-20}
+
+times=""
+i=0
+while [ "$i" -lt "$RUNS" ]; do
+    # -S stops the app first, so every run is a cold start
+    total=$(adb shell am start -S -W -n "$PACKAGE/$ACTIVITY" | tr -d '\r' | sed -n 's/^TotalTime: //p')
+    echo "run $((i + 1)): ${total} ms"
+    times="$times $total"
+    i=$((i + 1))
+    sleep 2
+done
+
+echo "$times" | tr ' ' '\n' | sed '/^$/d' | sort -n | awk '
+    { v[NR] = $1 }
+    END { printf "runs %d, min %d ms, median %d ms, max %d ms\n", NR, v[1], v[int((NR + 1) / 2)], v[NR] }'
@@ -0,0 +1,86 @@
+/* global cordova */
+
+/**
+ * Soak tests for cordova-plugin-otp-retriever
+ * Run with cordova-paramedic, or add this directory as a plugin and open the test page of cordova-plugin-test-framework
+ * The native OTPReaderSoak plugin replaces Play Services with a scripted gateway, so no SIM is needed
+ */
+
+function soak(options, success, error) {
+    cordova.exec(success, error, 'OTPReaderSoak', 'soak', [options]);
+}
+
+exports.defineAutoTests = function () {
+    describe('OTPReader soak', function () {
+        var originalTimeout;
+
+        beforeEach(function () {
+            originalTimeout = jasmine.DEFAULT_TIMEOUT_INTERVAL;
+            jasmine.DEFAULT_TIMEOUT_INTERVAL = 300000;
+        });
+
+        afterEach(function () {
+            jasmine.DEFAULT_TIMEOUT_INTERVAL = originalTimeout;
+        });
+
+        it('leaks no receiver, callback context or heap over 500 cycles', function (done) {
+            soak({ cycles: 500 }, function (report) {
+                console.log('OTPReader soak: ' + JSON.stringify(report));
+                expect(report.lostEvents).toBe(0);
+                expect(report.receiverLeaks).toBe(0);
+                expect(report.callbackContextLeaks).toBe(0);
+                expect(report.activeSessions.length).toBe(0);
+                expect(report.scheduledTimers).toBe(0);
+                // A few hundred KB of noise is normal; a leak of one object graph per cycle is far larger
+                expect(report.heapGrowthKb).toBeLessThan(2048);
+                done();
+            }, function (message) {
+                fail(message);
+                done();
+            });
+        });
+
+        it('delivers a burst of 2,000 back-to-back broadcasts', function (done) {
+            soak({ cycles: 1, burst: 2000 }, function (report) {
+                console.log('OTPReader burst: ' + JSON.stringify(report.burst));
+                expect(report.burst.lostEvents).toBe(0);
+                expect(report.receiverLeaks).toBe(0);
+                expect(report.callbackContextLeaks).toBe(0);
+                expect(report.activeSessions.length).toBe(0);
+                done();
+            }, function (message) {
+                fail(message);
+                done();
+            });
+        });
+    });
+};
+
+exports.defineManualTests = function (contentEl, createActionButton) {
+    var log = document.createElement('pre');
+    contentEl.appendChild(log);
+
+    function run(cycles) {
+        log.textContent = 'Running ' + cycles + ' cycles...';
+        soak({ cycles: cycles }, function (report) {
+            log.textContent = JSON.stringify(report, null, 2);
+        }, function (message) {
+            log.textContent = 'Soak run failed: ' + message;
+        });
+    }
+
+    createActionButton('Soak 1,000 cycles', function () {
+        run(1000);
+    });
+    createActionButton('Soak 10,000 cycles', function () {
+        run(10000);
+    });
+    createActionButton('Burst 20,000 broadcasts', function () {
+        log.textContent = 'Sending 20000 broadcasts...';
+        soak({ cycles: 1, burst: 20000 }, function (report) {
+            log.textContent = JSON.stringify(report, null, 2);
+        }, function (message) {
+            log.textContent = 'Soak run failed: ' + message;
+        });
+    });
+};
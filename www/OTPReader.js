@@ -1,5 +1,146 @@
 var exec = require('cordova/exec');
 
+/**
+ * Decode a listening event
+ * Native keep-callback events arrive as compact JSON text to keep per-event
+ * allocation and bridge serialization low; other results pass through unchanged
+ * @param {string|object} result - Raw plugin result
+ * @returns {object} - Result object
+ */
+function decodeResult(result) {
+    if (typeof result === 'string' && result.charAt(0) === '{') {
+        return JSON.parse(result);
+    }
+    return result;
+}
+
+/**
+ * Event stream over one native listening session
+ * Events carry a native `event` type: scheduled, listening, rearmed, warning, otp, cancelled, timeout or deadline.
+ * Use on/off for listeners, or iterate with for await...of; native errors end the stream
+ * @param {object} options - startListening options ({ sender, mode, templates, continuous, ... })
+ */
+function OTPStream(options) {
+    var self = this;
+    this.sessionId = null;
+    this.closed = false;
+    this._listeners = {};
+    this._queue = [];
+    this._waiting = [];
+    this._error = null;
+    
+    OTPReader.startListening(options || {}, function(event) {
+        if (event.sessionId && !self.sessionId) {
+            self.sessionId = event.sessionId;
+            if (self.closed) {
+                // Closed before the session was armed
+                exec(null, null, 'OTPReader', 'stopListening', [self.sessionId]);
+                return;
+            }
+        }
+        self._push(event);
+    }, function(error) {
+        self._fail(error);
+    });
+}
+
+OTPStream.prototype.on = function(type, listener) {
+    (this._listeners[type] = this._listeners[type] || []).push(listener);
+    return this;
+};
+
+OTPStream.prototype.off = function(type, listener) {
+    var listeners = this._listeners[type];
+    if (listeners) {
+        var index = listeners.indexOf(listener);
+        if (index >= 0) {
+            listeners.splice(index, 1);
+        }
+    }
+    return this;
+};
+
+/**
+ * Resolve with the next event as { value, done }, per the async iterator protocol
+ */
+OTPStream.prototype.next = function() {
+    var self = this;
+    if (this._queue.length) {
+        return Promise.resolve({ value: this._queue.shift(), done: false });
+    }
+    if (this._error) {
+        return Promise.reject(this._error);
+    }
+    if (this.closed) {
+        return Promise.resolve({ value: undefined, done: true });
+    }
+    return new Promise(function(resolve, reject) {
+        self._waiting.push({ resolve: resolve, reject: reject });
+    });
+};
+
+/**
+ * Stop the native session and end iteration
+ */
+OTPStream.prototype.close = function() {
+    if (this.closed) {
+        return Promise.resolve({ value: undefined, done: true });
+    }
+    this.closed = true;
+    if (this.sessionId) {
+        exec(null, null, 'OTPReader', 'stopListening', [this.sessionId]);
+    }
+    while (this._waiting.length) {
+        this._waiting.shift().resolve({ value: undefined, done: true });
+    }
+    this._emit('close', { event: 'close', sessionId: this.sessionId });
+    return Promise.resolve({ value: undefined, done: true });
+};
+
+// Called by for await...of when the loop exits early
+OTPStream.prototype['return'] = OTPStream.prototype.close;
+
+if (typeof Symbol !== 'undefined' && Symbol.asyncIterator) {
+    OTPStream.prototype[Symbol.asyncIterator] = function() {
+        return this;
+    };
+}
+
+OTPStream.prototype._push = function(event) {
+    if (this.closed) {
+        return;
+    }
+    this._emit(event.event, event);
+    if (this._waiting.length) {
+        this._waiting.shift().resolve({ value: event, done: false });
+    } else {
+        this._queue.push(event);
+    }
+};
+
+OTPStream.prototype._fail = function(error) {
+    if (this.closed) {
+        return;
+    }
+    this.closed = true;
+    this._error = error instanceof Error ? error : new Error(error);
+    this._emit('error', this._error);
+    while (this._waiting.length) {
+        this._waiting.shift().reject(this._error);
+    }
+};
+
+OTPStream.prototype._emit = function(type, payload) {
+    var listeners = this._listeners[type];
+    if (!listeners) {
+        return;
+    }
+    listeners = listeners.slice();
+    for (var i = 0; i < listeners.length; i++) {
+        listeners[i].call(this, payload);
+    }
+};
+
 /**
  * OTP Reader Plugin for Cordova
  * Provides automatic OTP reading functionality using Android SMS User Consent API
@@ -8,28 +149,141 @@ var OTPReader = {
     
     /**
      * Start listening for OTP SMS messages
-     * @param {string} senderPhoneNumber - Optional sender phone number to filter messages
+     * @param {string|object} senderPhoneNumber - Optional sender phone number to filter messages, or an options object
      * @param {function} successCallback - Success callback function
      * @param {function} errorCallback - Error callback function
+     * @param {object} options - Optional listening options (e.g. { mode: 'retriever', templates: [...], continuous: true, maxRearms: 10, rearmBackoffMs: 0, autofill: '#otp', autoSubmit: false, autofillMinConfidence: 0.7, deadlineMs: 60000, warnAfterMs: 'auto', armDelayMs: 0 })
      */
-    startListening: function(senderPhoneNumber, successCallback, errorCallback) {
+    startListening: function(senderPhoneNumber, successCallback, errorCallback, options) {
         if (typeof senderPhoneNumber === 'function') {
             // If first parameter is a function, it means no phone number was provided
+            options = errorCallback;
             errorCallback = successCallback;
             successCallback = senderPhoneNumber;
             senderPhoneNumber = null;
+        } else if (senderPhoneNumber !== null && typeof senderPhoneNumber === 'object') {
+            // Options object form: { sender: '...', templates: [...] }
+            options = senderPhoneNumber;
+            senderPhoneNumber = options.sender || null;
         }
         
-        exec(successCallback, errorCallback, 'OTPReader', 'startListening', [senderPhoneNumber]);
+        exec(function(result) {
+            if (successCallback) {
+                successCallback(decodeResult(result));
+            }
+        }, errorCallback, 'OTPReader', 'startListening', [senderPhoneNumber, options || null]);
+    },
+    
+    /**
+     * Open a typed event stream over a new listening session
+     * @param {object} options - Optional listening options, as for startListening ({ sender, mode, templates, continuous, ... })
+     * @returns {OTPStream} - Event emitter (on/off/close) and async iterator of listening events
+     */
+    stream: function(options) {
+        return new OTPStream(options);
+    },
+    
+    /**
+     * Listen for a single OTP
+     * Rejects on timeout or deadline, consent cancellation, an SMS without a code or a native error; the session is always stopped
+     * @param {object} options - Optional { timeout: ms, sender, mode, templates, deadlineMs }
+     * @returns {Promise<string>} - Resolves with the extracted code
+     */
+    awaitOtp: function(options) {
+        options = options || {};
+        return new Promise(function(resolve, reject) {
+            var stream = new OTPStream(options);
+            var timer = null;
+            
+            function finish(error, otp) {
+                if (timer) {
+                    clearTimeout(timer);
+                }
+                stream.close();
+                if (error) {
+                    reject(error);
+                } else {
+                    resolve(otp);
+                }
+            }
+            
+            function fail(message, event) {
+                var error = new Error(message);
+                error.event = event;
+                finish(error);
+            }
+            
+            if (options.timeout > 0) {
+                timer = setTimeout(function() {
+                    timer = null;
+                    fail('Timed out waiting for OTP', { event: 'timeout', sessionId: stream.sessionId });
+                }, options.timeout);
+            }
+            
+            stream.on('otp', function(event) {
+                if (event.otp) {
+                    finish(null, event.otp);
+                } else {
+                    fail('No OTP found in SMS', event);
+                }
+            }).on('cancelled', function(event) {
+                fail(event.message, event);
+            }).on('timeout', function(event) {
+                fail(event.message, event);
+            }).on('deadline', function(event) {
+                fail(event.message, event);
+            }).on('error', function(error) {
+                finish(error);
+            });
+        });
+    },
+    
+    /**
+     * Register sender templates used for native OTP extraction
+     * Templates are compiled once and cached for the lifetime of the plugin
+     * @param {Array} templates - [{ id, sender, anchors: ['your code is'], length, position: 'after'|'before', alphanumeric }]
+     * @param {function} successCallback - Success callback function (receives the number of templates)
+     * @param {function} errorCallback - Error callback function
+     */
+    registerTemplates: function(templates, successCallback, errorCallback) {
+        exec(successCallback, errorCallback, 'OTPReader', 'registerTemplates', [templates || []]);
     },
     
     /**
      * Stop listening for OTP SMS messages
+     * @param {string} sessionId - Optional session id returned by startListening; stops all sessions if omitted
      * @param {function} successCallback - Success callback function
      * @param {function} errorCallback - Error callback function
      */
-    stopListening: function(successCallback, errorCallback) {
-        exec(successCallback, errorCallback, 'OTPReader', 'stopListening', []);
+    stopListening: function(sessionId, successCallback, errorCallback) {
+        if (typeof sessionId === 'function') {
+            // If first parameter is a function, it means no session id was provided
+            errorCallback = successCallback;
+            successCallback = sessionId;
+            sessionId = null;
+        }
+        
+        exec(successCallback, errorCallback, 'OTPReader', 'stopListening', [sessionId || null]);
+    },
+    
+    /**
+     * Pre-warm the native SMS Retriever client and receiver
+     * The plugin is loaded lazily and does no warm-up at app start; calling this before
+     * showing the OTP screen makes startListening a near-zero-cost arm operation
+     * @param {function} successCallback - Success callback function
+     * @param {function} errorCallback - Error callback function
+     */
+    prewarm: function(successCallback, errorCallback) {
+        exec(successCallback, errorCallback, 'OTPReader', 'prewarm', []);
+    },
+    
+    /**
+     * Get the app signature hash(es) that SMS Retriever messages must contain
+     * @param {function} successCallback - Success callback function (receives an array of 11-character hashes)
+     * @param {function} errorCallback - Error callback function
+     */
+    getAppHash: function(successCallback, errorCallback) {
+        exec(successCallback, errorCallback, 'OTPReader', 'getAppHash', []);
     },
     
     /**
@@ -50,6 +304,51 @@ var OTPReader = {
         exec(successCallback, errorCallback, 'OTPReader', 'getDebugInfo', []);
     },
     
+    /**
+     * Set the native log level at runtime
+     * @param {string} level - VERBOSE, DEBUG, INFO, WARN, ERROR or NONE
+     * @param {number} traceSize - Optional size of the in-memory trace buffer returned by getDebugInfo (0 disables it)
+     * @param {function} successCallback - Success callback function
+     * @param {function} errorCallback - Error callback function
+     */
+    setLogLevel: function(level, traceSize, successCallback, errorCallback) {
+        if (typeof traceSize === 'function') {
+            // If second parameter is a function, it means no trace size was provided
+            errorCallback = successCallback;
+            successCallback = traceSize;
+            traceSize = -1;
+        }
+        
+        exec(successCallback, errorCallback, 'OTPReader', 'setLogLevel', [level, traceSize == null ? -1 : traceSize]);
+    },
+    
+    /**
+     * Get latency percentiles (p50/p95/p99) per stage for recent OTP sessions
+     * @param {function} successCallback - Success callback function
+     * @param {function} errorCallback - Error callback function
+     */
+    getMetrics: function(successCallback, errorCallback) {
+        exec(successCallback, errorCallback, 'OTPReader', 'getMetrics', []);
+    },
+    
+    /**
+     * Drain OTP events that were received natively but may not have reached JS (page reload, process restart)
+     * Call on resume or app start; events are removed once returned and expire after 10 minutes
+     * @param {Object} options - Optional { includeDelivered: true } to also return events already sent to a listener
+     * @param {function} successCallback - Success callback function (receives an array of events)
+     * @param {function} errorCallback - Error callback function
+     */
+    getPendingOtp: function(options, successCallback, errorCallback) {
+        if (typeof options === 'function') {
+            // If first parameter is a function, it means no options were provided
+            errorCallback = successCallback;
+            successCallback = options;
+            options = null;
+        }
+        
+        exec(successCallback, errorCallback, 'OTPReader', 'getPendingOtp', [!!(options && options.includeDelivered)]);
+    },
+    
     /**
      * Extract OTP from SMS message text
      * @param {string} message - SMS message text